@@ -1,6 +1,9 @@
 package EvoEvo.york.machinaClust;
 
 import EvoEvo.york.machineMetaModel.Domain;
+import EvoEvo.york.machineMetaModel.FitnessCache;
+import EvoEvo.york.machineMetaModel.FitnessEvaluator;
+import EvoEvo.york.machineMetaModel.Fingerprint;
 import EvoEvo.york.machineMetaModel.Machine;
 import EvoEvo.york.machineMetaModel.MetaModelException;
 import EvoEvo.york.machineMetaModel.Pearl;
@@ -12,6 +15,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 /** The calculator machine for a clusterer that works out the fitness of the containing clusterer's genome. */
 public class ClusterCalculator extends Machine {
@@ -29,74 +33,149 @@ public class ClusterCalculator extends Machine {
     /** In the context of this particular machine, doIt is overridden to calculate the fitness of the container's genome. */
     @Override
     public Structure doIt() {
+        this.evaluateWithin(Double.POSITIVE_INFINITY);
+
+        // As there's nothing else, answer this:
+        return this;
+    }
+
+    /** Calculate the total mismatch of the container's genome, which is its fitness negated, but give up as soon as the mismatch reaches the
+     *  supplied cutoff. If the evaluation completes then the fitness and the core points are remembered and the mismatch is answered.
+     *  Otherwise nothing is remembered and the answer is the mismatch found so far: an amount, at least the cutoff, that the total mismatch
+     *  is known to be no less than. */
+    private double evaluateWithin(double cutoff) {
         // Find the dataset provided by the containing individual's containing space:
         ClusterableDataset ds = (ClusterableDataset)((SearchableSpace)_environment.getContainer()
                                                                                   .orElseThrow(() -> new MetaModelException("No containing Space")))
                                                                                   .getDataset()
                                                                                   .orElseThrow(() -> new MetaModelException("Space does not contain dataset"));
 
-        // Find the corepoints in the containing clusterer's genome and for each allocate the closest observations:
-        this.findCorePoints(ds);
+        // Attach each observation to the nearest of the core points compiled from the receiver's code, calculating the mismatch between
+        // those observations and the corepoints:
+        CorePointArrays compiled = this.getCorePointArrays();
+        double[] mismatches = new double[compiled.size()];
+        int[] numObservations = new int[compiled.size()];
+        if (compiled.size() > 0) {
+            double total = compiled.accumulateAll(ds, mismatches, numObservations, cutoff);
+            if (total >= cutoff) return total;
+        }
+
+        this.setEvaluation(compiled, mismatches, numObservations);
+        return -_fitness.get();
+    }
+
+    /** Remember the core points, with the supplied mismatches and numbers of observations attached to each, and the resulting fitness */
+    private void setEvaluation(CorePointArrays compiled, double[] mismatches, int[] numObservations) {
+        Map<Integer, CorePoint> corePoints = new HashMap<>();
+        for (int c = 0; c < compiled.size(); c++) {
+            CorePoint cp = compiled.corePoint(c);
+            cp.add(mismatches[c], numObservations[c]);
+            corePoints.put(cp._id, cp);
+        }
 
         // Sum the total mismatch to calculate the fitness:
         double mismatch = 0.0;
-        if (_corePoints.size() == 0) {
+        if (corePoints.size() == 0) {
             // There are no corepoints, probably because the enture genome is non-coding.
             _fitness = Optional.of(Double.NEGATIVE_INFINITY);
         } else {
-            for (CorePoint cp : _corePoints.values()) {
+            for (CorePoint cp : corePoints.values()) {
                 mismatch += cp.totalMismatch();
             }
             _fitness = Optional.of(-mismatch);
         }
+        _corePoints = corePoints;
+    }
 
-        // As there's nothing else, answer this:
-        return this;
+    /** Answer the core points compiled from the receiver's code */
+    CorePointArrays getCorePointArrays() {
+        return (CorePointArrays)this.getPhenotype().get();
     }
 
-    /** Create the set of core points that are described by the containing individual's genome and attach each of them to their nearest
-     *  observations, calculating the mismatch between those observations and the corepoints. */
-    private void findCorePoints(ClusterableDataset ds) {
-        List<Pearl> genome = this.getCode();
-        genome.forEach(cp -> this.accumulateClusterPearl((ClusterPearl)cp));
-
-        for (Observation o : ds) {
-            // Calculate mismatches between o and all of the corepoints:
-            CorePoint best = null;
-            double bestMismatch = 0.0;
-            for (CorePoint cpt : _corePoints.values()) {
-                double mismatch = cpt.calculateMismatch(o);
-                if (best == null || mismatch < bestMismatch) {
-                    best = cpt;
-                    bestMismatch = mismatch;
-                }
-            }
+    /** Adopt the result of an evaluation of the receiver done elsewhere, by a ClusteringBatchEvaluator. The mismatches and numbers of
+     *  observations are those attached to each of the receiver's compiled core points. */
+    void adoptEvaluation(double[] mismatches, int[] numObservations) {
+        this.setEvaluation(this.getCorePointArrays(), mismatches, numObservations);
+        Optional<FitnessCache> cache = _domain.getFitnessCache();
+        if (cache.isPresent()) cache.get().put(Fingerprint.Of(_domain, _code), _fitness.get());
+    }
 
-            // Add the observation mismatch to the "best" corepoint
-            if (best != null) best.add(bestMismatch);
-        }
+    /** Answer true if the receiver's fitness is already known, either because it's been calculated or because it's in the domain's cache */
+    boolean lookUpFitness() {
+        if (_fitness.isPresent()) return true;
+
+        Optional<FitnessCache> cache = _domain.getFitnessCache();
+        if (cache.isPresent()) _fitness = cache.get().get(Fingerprint.Of(_domain, _code));
+        return _fitness.isPresent();
     }
 
-    /** The provided cluster pearl is part of this machine's structure. Add the associated core point information in to the receiver's state.
-     *  Note that we don't need to worry about the coding/non coding aspect of the pearl because that will have been stripped out  */
-    private void accumulateClusterPearl(ClusterPearl p) {
-        int cpId = p.getCorePoint();
-        CorePoint cp = _corePoints.get(cpId);
-        if (cp == null) {
-            cp = new CorePoint(cpId);
-            _corePoints.put(cpId, cp);
+    /** Answer the total mismatch of the receiver, that is its fitness negated, if that's less than the cutoff. If not, answer an amount of at
+     *  least the cutoff that the mismatch is known to be no less than, which may be found without looking at the whole dataset. Only a
+     *  complete evaluation is remembered or cached. */
+    public double mismatchWithin(double cutoff) {
+        if (_fitness.isPresent()) return -_fitness.get();
+        if (_domain.getFitnessEvaluator().isPresent()) return -this.getFitness();
+
+        Optional<FitnessCache> cache = _domain.getFitnessCache();
+        if (!cache.isPresent()) return this.evaluateWithin(cutoff);
+
+        Fingerprint key = Fingerprint.Of(_domain, _code);
+        Optional<Double> cached = cache.get().get(key);
+        if (cached.isPresent()) {
+            _fitness = cached;
+            return -cached.get();
         }
-
-        cp.addContributionToDimension(p.getDimension(), p.getValue());
+        double result = this.evaluateWithin(cutoff);
+        if (_fitness.isPresent()) cache.get().put(key, _fitness.get());
+        return result;
     }
 
+    /** Answer the fitness of the receiver, calculating it if need be. If the domain caches fitness then a machine with the same code as
+     *  one already evaluated is not evaluated again, and if the domain has a fitness evaluator then that does the evaluation, in full. */
     public Double getFitness() {
-        if (!_fitness.isPresent()) this.doIt();
+        if (!_fitness.isPresent()) {
+            Optional<FitnessCache> cache = _domain.getFitnessCache();
+            if (cache.isPresent()) {
+                _fitness = Optional.of(cache.get().computeIfAbsent(Fingerprint.Of(_domain, _code), this::evaluate));
+            } else {
+                this.evaluate();
+            }
+        }
         return _fitness.get();
     }
 
+    /** Calculate and answer the receiver's fitness, here or, if the domain has one, with its fitness evaluator */
+    private double evaluate() {
+        if (_domain.getFitnessEvaluator().isPresent()) {
+            _fitness = Optional.of(this.requestFitness().join());
+        } else {
+            this.doIt();
+        }
+        return _fitness.get();
+    }
+
+    /** Ask the domain's fitness evaluator for the receiver's fitness, without waiting for the answer */
+    CompletableFuture<Double> requestFitness() {
+        FitnessEvaluator evaluator = _domain.getFitnessEvaluator().orElseThrow(() -> new MetaModelException("Domain has no fitness evaluator"));
+        return evaluator.evaluate(_domain.packedValues(_code));
+    }
+
+    /** Adopt the fitness of the receiver found by the domain's fitness evaluator, at the request of a ClusteringRequestEvaluator */
+    void adoptFitness(double fitness) {
+        _fitness = Optional.of(fitness);
+        Optional<FitnessCache> cache = _domain.getFitnessCache();
+        if (cache.isPresent()) cache.get().put(Fingerprint.Of(_domain, _code), fitness);
+    }
+
+    /** The core points are only found when the receiver's fitness is actually calculated, rather than found in a cache, so find them now if
+     *  that's not yet happened. */
+    private void ensureCorePoints() {
+        if (_corePoints.isEmpty() && !_code.isEmpty()) this.doIt();
+    }
+
     @Override
     public String toString() {
+        this.ensureCorePoints();
         StringBuilder b = new StringBuilder(_code.size());
         _corePoints.values()
                    .stream()
@@ -111,10 +190,12 @@ public class ClusterCalculator extends Machine {
     }
 
     public int numCorePoints() {
+        this.ensureCorePoints();
         return _corePoints.size();
     }
 
     public int numCorepoints() {
+        this.ensureCorePoints();
         return _corePoints.size();
     }
 }
@@ -30,6 +30,14 @@ public class ClusterPearl extends Pearl {
         _value = 0.0;
     }
 
+    /** Construct a coding pearl with all of its components defined */
+    protected ClusterPearl(Domain domain, int corePoint, int dimension, double value) {
+        super(domain);
+        _corePoint = corePoint;
+        _dimension = dimension;
+        _value = value;
+    }
+
     /** Constructor used for testing */
     protected ClusterPearl(Domain domain, int value) {
         this(domain);
@@ -0,0 +1,35 @@
+package EvoEvo.york.machinaClust;
+
+import EvoEvo.york.machineMetaModel.Domain;
+import EvoEvo.york.machineMetaModel.Pearl;
+
+/** The codec that packs a ClusterPearl into three values: its core point, its dimension and its value. */
+class ClusterPearlCodec implements Domain.Codec {
+    static final int CORE_POINT = 0;
+    static final int DIMENSION = 1;
+    static final int VALUE = 2;
+
+    private final Domain _domain;
+
+    ClusterPearlCodec(Domain domain) {
+        _domain = domain;
+    }
+
+    @Override
+    public int width() {
+        return 3;
+    }
+
+    @Override
+    public void encode(Pearl p, double[] values, int offset) {
+        ClusterPearl cp = (ClusterPearl)p;
+        values[offset + CORE_POINT] = cp.getCorePoint();
+        values[offset + DIMENSION] = cp.getDimension();
+        values[offset + VALUE] = cp.getValue();
+    }
+
+    @Override
+    public Pearl decode(double[] values, int offset) {
+        return new ClusterPearl(_domain, (int)values[offset + CORE_POINT], (int)values[offset + DIMENSION], values[offset + VALUE]);
+    }
+}
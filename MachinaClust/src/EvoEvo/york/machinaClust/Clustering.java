@@ -24,10 +24,20 @@ public class Clustering extends Individual {
     @Override
     public int compareTo(Individual that) {
         assert that instanceof Clustering;
-        Double thisFit = this.fitness();
-        Double thatFit = ((Clustering)that).fitness();
+        return Double.compare(this.fitnessKey(), that.fitnessKey());
+    }
 
-        return thatFit.compareTo(thisFit);
+    /** The fitness key of a clustering is its negated fitness, as the key is smaller for fitter individuals */
+    @Override
+    protected double calculateFitnessKey() {
+        return -this.fitness();
+    }
+
+    /** A clustering's key is its total mismatch, the calculation of which can stop as soon as it reaches the cutoff */
+    @Override
+    protected double calculateFitnessKey(double cutoff) {
+        ClusterCalculator calculatorMachine = (ClusterCalculator)this.locateMachine(ClusterCalculator.class);
+        return calculatorMachine.mismatchWithin(cutoff);
     }
 
     /** Answer the fitness of the receiver. This time is calculated (and memoised) by a specialised machine expressed by the receiver */
@@ -0,0 +1,77 @@
+package EvoEvo.york.machinaClust;
+
+import EvoEvo.york.machineMetaModel.Individual;
+import EvoEvo.york.machineMetaModel.PopulationEvaluator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/** Evaluates a population of clusterings together in a single pass over the dataset. Each block of observations is read once and then matched
+ *  against the core points of every clustering in parallel, rather than each clustering reading the whole dataset for itself, so the
+ *  observations are still in the cache when the next clustering comes to look at them. */
+public class ClusteringBatchEvaluator implements PopulationEvaluator {
+    /** The number of observations read from the dataset at a time */
+    static final int BLOCK_SIZE = 1024;
+
+    private final ClusterableDataset _dataset;
+
+    public ClusteringBatchEvaluator(ClusterableDataset dataset) {
+        _dataset = dataset;
+    }
+
+    @Override
+    public void evaluate(List<Individual> individuals) {
+        // Find those individuals whose fitness really needs calculating, rather than being known already:
+        List<Individual> toEvaluate = new ArrayList<>();
+        List<ClusterCalculator> calculators = new ArrayList<>();
+        for (Individual i : individuals) {
+            ClusterCalculator cc = (ClusterCalculator)i.locateMachine(ClusterCalculator.class);
+            if (cc.lookUpFitness()) {
+                i.setFitnessKey(-((Clustering)i).fitness());
+            } else {
+                toEvaluate.add(i);
+                calculators.add(cc);
+            }
+        }
+        if (toEvaluate.isEmpty()) return;
+
+        int n = calculators.size();
+        CorePointArrays[] compiled = new CorePointArrays[n];
+        double[][] mismatches = new double[n][];
+        int[][] numObservations = new int[n][];
+        for (int i = 0; i < n; i++) {
+            compiled[i] = calculators.get(i).getCorePointArrays();
+            mismatches[i] = new double[compiled[i].size()];
+            numObservations[i] = new int[compiled[i].size()];
+        }
+
+        // Stream the dataset once, a block at a time, attaching each observation in the block to the nearest core point of each clustering:
+        double[][] block = new double[BLOCK_SIZE][];
+        int blockSize = 0;
+        for (Observation o : _dataset) {
+            block[blockSize++] = o.getValues();
+            if (blockSize == BLOCK_SIZE) {
+                this.accumulateBlock(block, blockSize, compiled, mismatches, numObservations);
+                blockSize = 0;
+            }
+        }
+        if (blockSize > 0) this.accumulateBlock(block, blockSize, compiled, mismatches, numObservations);
+
+        for (int i = 0; i < n; i++) {
+            calculators.get(i).adoptEvaluation(mismatches[i], numObservations[i]);
+            toEvaluate.get(i).setFitnessKey(-((Clustering)toEvaluate.get(i)).fitness());
+        }
+    }
+
+    /** Attach each of the first blockSize observations in the block to the nearest core point of each clustering, in parallel. Clusterings
+     *  with no core points at all are left alone. */
+    private void accumulateBlock(double[][] block, int blockSize, CorePointArrays[] compiled, double[][] mismatches, int[][] numObservations) {
+        IntStream.range(0, compiled.length).parallel().forEach(i -> {
+            if (compiled[i].size() == 0) return;
+            for (int b = 0; b < blockSize; b++) {
+                compiled[i].accumulate(block[b], mismatches[i], numObservations[i]);
+            }
+        });
+    }
+}
@@ -0,0 +1,36 @@
+package EvoEvo.york.machinaClust;
+
+import EvoEvo.york.machineMetaModel.Individual;
+import EvoEvo.york.machineMetaModel.PopulationEvaluator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/** Evaluates a population of clusterings with the fitness evaluator of their domain, such as a pool of worker processes. The fitness of every
+ *  clustering is asked for before any answer is waited for, so that the evaluator has the whole population to work on at once rather than
+ *  only as many clusterings as there are threads waiting for answers. */
+public class ClusteringRequestEvaluator implements PopulationEvaluator {
+    @Override
+    public void evaluate(List<Individual> individuals) {
+        // Ask for the fitness of those individuals whose fitness isn't known already:
+        List<Individual> toEvaluate = new ArrayList<>();
+        List<ClusterCalculator> calculators = new ArrayList<>();
+        List<CompletableFuture<Double>> results = new ArrayList<>();
+        for (Individual i : individuals) {
+            ClusterCalculator cc = (ClusterCalculator)i.locateMachine(ClusterCalculator.class);
+            if (cc.lookUpFitness()) {
+                i.setFitnessKey(-((Clustering)i).fitness());
+            } else {
+                toEvaluate.add(i);
+                calculators.add(cc);
+                results.add(cc.requestFitness());
+            }
+        }
+
+        for (int i = 0; i < toEvaluate.size(); i++) {
+            calculators.get(i).adoptFitness(results.get(i).join());
+            toEvaluate.get(i).setFitnessKey(-((Clustering)toEvaluate.get(i)).fitness());
+        }
+    }
+}
@@ -6,6 +6,7 @@ import org.apache.commons.math3.distribution.BinomialDistribution;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -30,6 +31,12 @@ public class ClusteringType extends Domain {
         _minValue = minValue;
         _valueRange = valueRange;
         _dataset = dataset;
+        this.setCodec(new ClusterPearlCodec(this));
+        this.setMachineFactory(ClusterCalculator::new);
+
+        // Identical code is evaluated only once if the simulation asks for a fitness cache:
+        int cacheSize = Simulation.GetValue("fitnessCacheSize", 0);
+        if (cacheSize > 0) this.setFitnessCache(new FitnessCache(cacheSize));
     }
 
     @Override
@@ -57,6 +64,11 @@ public class ClusteringType extends Domain {
             mutatedCode = r.rearrange(mutatedCode);
         }
 
+        // Each rearrangement answers new code, but if there were none then copy the original so that point mutations leave it alone:
+        if (rearrangements.isEmpty()) {
+            mutatedCode = Domain.exactCopy(mutatedCode);
+        }
+
         // Do point mutations:
         double pointMutationRate = ((KlonerType)kloner.getDomain()).getPointMutationRate(kloner);
         BinomialDistribution bd = new BinomialDistribution(mutatedCode.size(), pointMutationRate*2);
@@ -72,13 +84,31 @@ public class ClusteringType extends Domain {
         return new Structure(initial.getEnvironment(), mutatedCode, this);
     }
 
+    /** A cluster calculator is compiled into the dense arrays of the core points that its code describes */
+    @Override
+    public Optional<Object> compile(List<Pearl> code) {
+        return Optional.of(new CorePointArrays(this.packedValues(code)));
+    }
+
+    /** Answer the fitness, over the receiver's dataset, of a cluster calculator whose code is packed into the given values. This is what a
+     *  fitness evaluator in another process calculates for the calculator. */
+    public double fitnessOf(double[] packedCode) {
+        CorePointArrays compiled = new CorePointArrays(packedCode);
+        if (compiled.size() == 0) return Double.NEGATIVE_INFINITY;
+        return -compiled.accumulateAll((ClusterableDataset)_dataset, new double[compiled.size()], new int[compiled.size()], Double.POSITIVE_INFINITY);
+    }
+
     /** Apply a point mutation to the supplied code, which has already been rearranged in several posible ways. */
     private void pointMutation(List<Pearl> code, StringBuilder logString) {
         // Choose a particular pearl to mutate:
         ThreadLocalRandom r = ThreadLocalRandom.current();
-        ClusterPearl p = (ClusterPearl)code.get(r.nextInt(code.size()));
+        int position = r.nextInt(code.size());
+        ClusterPearl p = (ClusterPearl)code.get(position);
         if (_Logger.isLoggable(Level.FINER)) logString.append("pt,");
         p.pointMutate(r, _numCorepoints, _dataset.getNumDimensions(), _valueRange, _minValue);
+
+        // Put the mutated pearl back as packed code only hands out copies of its pearls:
+        code.set(position, p);
     }
 
     private void addANumberOfRearrangments(Structure initial, double mutationRate, List<Rearrangement> rearrangements, Rearrangement operator) {
@@ -96,13 +126,12 @@ public class ClusteringType extends Domain {
      *  Note that there's a practical lower limit to the size of a genome that can be subjected to a large deletion and this code
      *  requires that the provided list is at least 20 units long. Any shorter than that and it is returned unmodified. */
     protected List<Pearl> largeDeletion(List<Pearl> l, StringBuilder logString) {
-        List<Pearl> result = new ArrayList<>();
-
         if (l.size() < 20) {
-            result = new ArrayList<>(l);
-            return result;
+            return Domain.exactCopy(l);
         }
 
+        List<Pearl> result = this.newCode(l.size());
+
         // Calculate where in the list we're going to split things. Note that i and j here have
         // the meaning that they do in Sergio's paper:
         ThreadLocalRandom r = ThreadLocalRandom.current();
@@ -170,7 +199,7 @@ public class ClusteringType extends Domain {
 
     /** Carry out a large duplication mutation of the supplied clusterer genome */
     protected List<Pearl> largeDuplication(List<Pearl> l, StringBuilder logString) {
-        List<Pearl> result = new ArrayList<>();
+        List<Pearl> result = this.newCode(l.size() * 2);
 
         // Calculate where in the list we're going to copy a chunk from:
         int[] positions = this.calculateDuplicationPositions(l);
@@ -236,7 +265,21 @@ public class ClusteringType extends Domain {
         this.copyChunk(source, result, this.normalise(insertPos + 1, source.size()), 0);
     }
 
+    /** Copy the pearls from start around the (circular) source up to, but not including, finish onto the end of the destination. If start and
+     *  finish are the same then the whole of the source is copied. */
     private void copyChunk(List<Pearl> source, List<Pearl> destination, int start, int finish) {
+        if (source instanceof PackedCode && destination instanceof PackedCode) {
+            // Packed code can be copied a range at a time rather than a pearl at a time:
+            PackedCode packedDestination = (PackedCode)destination;
+            if (start < finish) {
+                packedDestination.addRange((PackedCode)source, start, finish);
+            } else {
+                packedDestination.addRange((PackedCode)source, start, source.size());
+                packedDestination.addRange((PackedCode)source, 0, finish);
+            }
+            return;
+        }
+
         int position = start;
         do {
             destination.add(source.get(position).klone());
@@ -246,8 +289,8 @@ public class ClusteringType extends Domain {
 
     /** Carry out a large translocation restructuring of the supplied clusterer genome */
     protected List<Pearl> largeTranslocation(List<Pearl> l, StringBuilder logString) {
-        List<Pearl> intermediateResult = new ArrayList<>();
-        List<Pearl> result = new ArrayList<>();
+        List<Pearl> intermediateResult = this.newCode(l.size() * 2);
+        List<Pearl> result = this.newCode(l.size() * 2);
 
         // Calculate where in the list we're going to copy a chunk from:
         int[] positions;
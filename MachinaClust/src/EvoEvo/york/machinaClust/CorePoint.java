@@ -89,6 +89,12 @@ public class CorePoint {
         _numObservations++;
     }
 
+    /** A number of observations, with the given total mismatch, have been calculated to be closest to this point in space */
+    public void add(double totalMismatch, int numObservations) {
+        _totalMismatch += totalMismatch;
+        _numObservations += numObservations;
+    }
+
     public int getNumObservations() {
         return _numObservations;
     }
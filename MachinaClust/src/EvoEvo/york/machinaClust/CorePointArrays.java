@@ -0,0 +1,118 @@
+package EvoEvo.york.machinaClust;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import static java.lang.Math.abs;
+
+/** The core points coded for by the code of a ClusterCalculator, compiled into dense arrays so that the mismatch between an observation and
+ *  each core point can be calculated without any boxing or map lookups. The core points are held in order of id and the dimensions of each
+ *  in ascending order. Once built an instance is never changed. */
+class CorePointArrays {
+    /** The id of each core point */
+    final int[] _ids;
+
+    /** The dimensions of the subspace of each core point */
+    final int[][] _dimensions;
+
+    /** The coordinates of each core point, one for each of its dimensions */
+    final double[][] _coordinates;
+
+    /** For each core point, whether each dimension, up to its greatest, is in its subspace */
+    final boolean[][] _inSubspace;
+
+    /** Compile the supplied packed cluster pearls, as packed by a ClusterPearlCodec, into core points. The coordinate of a core point in a
+     *  dimension is the sum of the values of all the pearls for that core point and dimension. */
+    CorePointArrays(double[] packed) {
+        Map<Integer, Map<Integer, Double>> corePoints = new TreeMap<>();
+        for (int offset = 0; offset < packed.length; offset += 3) {
+            int id = (int)packed[offset + ClusterPearlCodec.CORE_POINT];
+            int dimension = (int)packed[offset + ClusterPearlCodec.DIMENSION];
+            double value = packed[offset + ClusterPearlCodec.VALUE];
+            corePoints.computeIfAbsent(id, i -> new TreeMap<>()).merge(dimension, value, (v1, v2) -> v1 + v2);
+        }
+
+        int size = corePoints.size();
+        _ids = new int[size];
+        _dimensions = new int[size][];
+        _coordinates = new double[size][];
+        _inSubspace = new boolean[size][];
+        int c = 0;
+        for (Map.Entry<Integer, Map<Integer, Double>> e : corePoints.entrySet()) {
+            Map<Integer, Double> coordinates = e.getValue();
+            _ids[c] = e.getKey();
+            _dimensions[c] = coordinates.keySet().stream().mapToInt(d -> d).toArray();
+            _coordinates[c] = coordinates.values().stream().mapToDouble(v -> v).toArray();
+            _inSubspace[c] = new boolean[_dimensions[c][_dimensions[c].length - 1] + 1];
+            for (int d : _dimensions[c]) _inSubspace[c][d] = true;
+            c++;
+        }
+    }
+
+    /** Answer the number of core points */
+    int size() {
+        return _ids.length;
+    }
+
+    /** Calculate the mismatch between the supplied observation values and the given core point, exactly as CorePoint.calculateMismatch()
+     *  does. That is, the manhattan offset inside the core point's subspace plus that outside, weighted by the number of dimensions outside,
+     *  all divided by the number of dimensions of the observation. */
+    double mismatch(int c, double[] values) {
+        int[] dimensions = _dimensions[c];
+        double[] coordinates = _coordinates[c];
+        boolean[] inSubspace = _inSubspace[c];
+        int numDimensions = dimensions.length;
+
+        double inside = 0.0;
+        for (int d = 0; d < numDimensions; d++) {
+            inside += abs(values[dimensions[d]] - coordinates[d])/numDimensions;
+        }
+        inside *= numDimensions;
+
+        double outside = 0.0;
+        for (int i = 0; i < values.length; i++) {
+            if (i >= inSubspace.length || !inSubspace[i]) outside += abs(values[i]);
+        }
+        outside *= (values.length - numDimensions);
+
+        return (inside + outside) / values.length;
+    }
+
+    /** Find the core point nearest to the supplied observation values, that with the least mismatch, and add the mismatch and the
+     *  observation to that core point's totals. Answer the mismatch. There must be at least one core point. */
+    double accumulate(double[] values, double[] mismatches, int[] numObservations) {
+        int best = 0;
+        double bestMismatch = this.mismatch(0, values);
+        for (int c = 1; c < _ids.length; c++) {
+            double mismatch = this.mismatch(c, values);
+            if (mismatch < bestMismatch) {
+                best = c;
+                bestMismatch = mismatch;
+            }
+        }
+
+        mismatches[best] += bestMismatch;
+        numObservations[best]++;
+        return bestMismatch;
+    }
+
+    /** Attach each of the observations to the nearest core point, as accumulate() does, answering the total mismatch. Give up as soon as
+     *  the total reaches the cutoff, answering the total so far. There must be at least one core point. */
+    double accumulateAll(Iterable<Observation> observations, double[] mismatches, int[] numObservations, double cutoff) {
+        double total = 0.0;
+        for (Observation o : observations) {
+            total += this.accumulate(o.getValues(), mismatches, numObservations);
+            if (total >= cutoff) return total;
+        }
+        return total;
+    }
+
+    /** Answer a new CorePoint object for the given core point, with no observations attached */
+    CorePoint corePoint(int c) {
+        CorePoint result = new CorePoint(_ids[c]);
+        for (int d = 0; d < _dimensions[c].length; d++) {
+            result.addContributionToDimension(_dimensions[c][d], _coordinates[c][d]);
+        }
+        return result;
+    }
+}
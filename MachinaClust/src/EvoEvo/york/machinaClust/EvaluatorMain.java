@@ -0,0 +1,24 @@
+package EvoEvo.york.machinaClust;
+
+import EvoEvo.york.machineMetaModel.EvaluatorWorker;
+import EvoEvo.york.machineMetaModel.Machine;
+import EvoEvo.york.machineMetaModel.Simulation;
+import EvoEvo.york.machineMetaModel.Util;
+
+import java.io.IOException;
+
+/** A worker process for the pool of fitness evaluators that Main starts when "numEvaluatorProcesses" is set. It loads the dataset once and
+ *  then evaluates the packed code of cluster calculators sent to it by the pool listening on the given port. */
+public class EvaluatorMain {
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.out.println(String.format("Usage: java -classpath <classpath> %s <property file path> <port> <worker index>", EvaluatorMain.class.getName()));
+            System.exit(1);
+        }
+
+        Util.LoadProperties(args[0]);
+        Machine.Initialise();
+        Main.SetUp(Simulation.GetString("dataFile"));
+        EvaluatorWorker.Serve(Integer.parseInt(args[1]), Integer.parseInt(args[2]), Main._ClustererDomain::fitnessOf);
+    }
+}
@@ -0,0 +1,72 @@
+package EvoEvo.york.machinaClust;
+
+import EvoEvo.york.machineMetaModel.ElitistSpace;
+import EvoEvo.york.machineMetaModel.GenomeSerializer;
+import EvoEvo.york.machineMetaModel.IslandCoordinator;
+import EvoEvo.york.machineMetaModel.IslandSpace;
+import EvoEvo.york.machineMetaModel.IslandWorker;
+import EvoEvo.york.machineMetaModel.Machine;
+import EvoEvo.york.machineMetaModel.Simulation;
+import EvoEvo.york.machineMetaModel.Util;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.logging.Logger;
+
+/** Runs MachinaClust as an island model with each island in a separate process. Run with just a property file, this is the coordinator, which
+ *  launches a worker process for each of "numIslands" islands, each running this class again with the coordinator's port and the island's
+ *  index, and reports the best clustering found on any island. */
+public class IslandMain {
+    static Logger _Logger = Logger.getLogger("EvoEvo");
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1 && args.length != 3) {
+            System.out.println(String.format("Usage: java -classpath <classpath> %s <property file path> [<port> <island index>]", IslandMain.class.getName()));
+            System.exit(1);
+        }
+
+        // Load the Properties files into the Simulation class that is referred to by the rest of the code:
+        Util.LoadProperties(args[0]);
+        Machine.Initialise();
+        Main.SetUp(Simulation.GetString("dataFile"));
+        GenomeSerializer serializer = new GenomeSerializer(Arrays.asList(Main._ClustererDomain, Main._ReproducerDomain, Main._TranscriberDomain,
+                                                                         Main._TranslatorDomain, Main._KlonerDomain));
+        int numIslands = Simulation.GetValue("numIslands", 4);
+
+        if (args.length == 3) {
+            // This is a worker hosting one island of the clusterings:
+            ElitistSpace island = Main.CreateSpace(Simulation.GetValue("numIndividuals", 100) / numIslands);
+            IslandWorker worker = new IslandWorker(island, serializer, Clustering::new,
+                                                   Simulation.GetValue("migrationInterval", 10),
+                                                   Simulation.GetValue("numMigrants", 1),
+                                                   IslandSpace.Emigrants.valueOf(Simulation.GetValue("emigrantSelection", IslandSpace.Emigrants.BEST.name()).toUpperCase()));
+            worker.serve(Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+            return;
+        }
+
+        IslandSpace.Topology topology = IslandSpace.Topology.valueOf(Simulation.GetValue("migrationTopology", IslandSpace.Topology.RING.name()).toUpperCase());
+        try (IslandCoordinator coordinator = new IslandCoordinator(topology)) {
+            List<String> command = Arrays.asList(System.getProperty("java.home") + "/bin/java", "-classpath", System.getProperty("java.class.path"),
+                                                 IslandMain.class.getName(), args[0]);
+            for (int i = 0; i < numIslands; i++) coordinator.launch(command, i);
+            coordinator.connect(numIslands);
+
+            // Each round is a migration interval's worth of generations on every island:
+            double bestKey;
+            int round = 0;
+            do {
+                bestKey = coordinator.search();
+                System.out.printf("Best fitness of %d islands after %d rounds is: %.8f%n", numIslands, round, -bestKey);
+                round++;
+            } while (-bestKey < Simulation.GetValue("targetFitness", -100.0)
+                     &&
+                     round < Simulation.GetValue("maxRounds", 100));
+
+            ElitistSpace home = new ElitistSpace(Optional.of(Main._TestData));
+            System.out.println("Best: " + coordinator.best(serializer, Clustering::new, Optional.of(home)).get());
+        }
+        Machine.FlushLogger();
+    }
+}
@@ -0,0 +1,28 @@
+package EvoEvo.york.machinaClust;
+
+import EvoEvo.york.machineMetaModel.Domain;
+import EvoEvo.york.machineMetaModel.Pearl;
+
+/** The codec that packs a KlonerPearl into the single value that is its mutation rate. */
+class KlonerPearlCodec implements Domain.Codec {
+    private final Domain _domain;
+
+    KlonerPearlCodec(Domain domain) {
+        _domain = domain;
+    }
+
+    @Override
+    public int width() {
+        return 1;
+    }
+
+    @Override
+    public void encode(Pearl p, double[] values, int offset) {
+        values[offset] = ((KlonerPearl)p).getMutationRate();
+    }
+
+    @Override
+    public Pearl decode(double[] values, int offset) {
+        return new KlonerPearl(_domain, values[offset]);
+    }
+}
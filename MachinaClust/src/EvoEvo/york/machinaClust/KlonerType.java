@@ -10,6 +10,7 @@ import EvoEvo.york.machineMetaModel.Simulation;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 import java.util.Random;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Supplier;
@@ -21,6 +22,7 @@ import static java.lang.Math.min;
 public class KlonerType extends Domain {
     public KlonerType(String name, Class<? extends Machine> machineType) {
         super(name, machineType, (l, k) -> mutateKlonerCoding(l, k));
+        this.setCodec(new KlonerPearlCodec(this));
     }
 
     /**  Mutate the mutation rates encoded in the list of Kloner pearls. These are used in order for the four different mutation rates. */
@@ -52,13 +54,18 @@ public class KlonerType extends Domain {
     }
 
     private double readRate(Kloner kloner, int skipCount, Supplier<MetaModelException> metaModelExceptionSupplier) {
-        List<Pearl> code = kloner.getCode();
-        KlonerPearl deletionPearl = (KlonerPearl)code.stream()
-                                                     .filter(p -> p.isCoding())
-                                                     .skip(skipCount)
-                                                     .findFirst()
-                                                     .orElseThrow(metaModelExceptionSupplier);
-        return deletionPearl.getMutationRate();
+        double[] rates = (double[])kloner.getPhenotype().get();
+        if (skipCount >= rates.length) throw metaModelExceptionSupplier.get();
+        return rates[skipCount];
+    }
+
+    /** A Kloner is compiled into the mutation rates of its coding pearls, in order */
+    @Override
+    public Optional<Object> compile(List<Pearl> code) {
+        return Optional.of(code.stream()
+                               .filter(p -> p.isCoding())
+                               .mapToDouble(p -> ((KlonerPearl)p).getMutationRate())
+                               .toArray());
     }
 
     /** Answer the duplication mutation rate for this machina clust domain. This is the mutation rate in the second member of the provided Kloner machine's genome that
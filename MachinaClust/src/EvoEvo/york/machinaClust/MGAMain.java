@@ -6,7 +6,6 @@ import EvoEvo.york.machineMetaModel.Kloner;
 import EvoEvo.york.machineMetaModel.Machine;
 import EvoEvo.york.machineMetaModel.MicrobialGASpace;
 import EvoEvo.york.machineMetaModel.Reproducer;
-import EvoEvo.york.machineMetaModel.SearchableSpace;
 import EvoEvo.york.machineMetaModel.Simulation;
 import EvoEvo.york.machineMetaModel.Space;
 import EvoEvo.york.machineMetaModel.Transcriber;
@@ -58,7 +57,7 @@ public class MGAMain {
             System.exit(-1);
         }
 
-        SearchableSpace space = new MicrobialGASpace(Optional.of(_TestData));
+        MicrobialGASpace space = new MicrobialGASpace(Optional.of(_TestData));
 
         int numClusterings = Simulation.GetValue("numIndividuals", 100);
 
@@ -77,11 +76,13 @@ public class MGAMain {
 
         double initialFitness = ((Clustering)initialBest.get()).fitness();
 
+        // Run this many tournaments in parallel for each search, if any, rather than one at a time:
+        int numTournaments = Simulation.GetValue("parallelTournaments", 0);
         Clustering best;
         long time = System.currentTimeMillis();
         int searchCount = 0;
         do {
-            best = (Clustering)space.search().get();
+            best = (Clustering)(numTournaments > 0 ? space.search(numTournaments) : space.search()).get();
             if (searchCount % 100 == 0) {
                 String report = String.format("Best of %d after %d iterations is: %s%n ", space.numIndividuals(), searchCount, best);
                 System.out.printf(report);
@@ -3,8 +3,10 @@ package EvoEvo.york.machinaClust;
 import EvoEvo.york.machineMetaModel.Domain;
 import EvoEvo.york.machineMetaModel.ElitistSpace;
 import EvoEvo.york.machineMetaModel.Individual;
+import EvoEvo.york.machineMetaModel.IslandSpace;
 import EvoEvo.york.machineMetaModel.Kloner;
 import EvoEvo.york.machineMetaModel.Machine;
+import EvoEvo.york.machineMetaModel.ProcessEvaluatorPool;
 import EvoEvo.york.machineMetaModel.Reproducer;
 import EvoEvo.york.machineMetaModel.SearchableSpace;
 import EvoEvo.york.machineMetaModel.Simulation;
@@ -14,6 +16,7 @@ import EvoEvo.york.machineMetaModel.Translator;
 import EvoEvo.york.machineMetaModel.Util;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Optional;
 import java.util.logging.Logger;
 
@@ -39,6 +42,28 @@ public class Main {
         _KlonerDomain = new KlonerType("MachinaClust Kloner domain", Kloner.class);
     }
 
+    /** Create an elitist space containing the given number of random clusterings */
+    static ElitistSpace CreateSpace(int numClusterings) {
+        ElitistSpace space = new ElitistSpace(Optional.of(_TestData));
+        if (_ClustererDomain.getFitnessEvaluator().isPresent()) {
+            space.setPopulationEvaluator(new ClusteringRequestEvaluator());
+        } else if (Simulation.GetValue("batchEvaluation", false)) {
+            space.setPopulationEvaluator(new ClusteringBatchEvaluator(_TestData));
+        }
+
+        for (int i = 0; i < numClusterings; i++) {
+            ClusteringTestUtil.CreateRandomClustering(Optional.of((Space)space), _ClustererDomain,
+                                                      _ReproducerDomain, _TranscriberDomain, _TranslatorDomain, _KlonerDomain,
+                                                      Simulation.GetValue("initialDeletionMutationRate", 0.1),
+                                                      Simulation.GetValue("initialDuplicationMutationRate", 0.1),
+                                                      Simulation.GetValue("initialTranslocationMutationRate", 0.1),
+                                                      Simulation.GetValue("initialPointMutationRate", 0.1),
+                                                      Simulation.GetValue("minInitialNumPearls", 100), Simulation.GetValue("maxInitialNumPearls", 200),
+                                                      _TestData.getNumDimensions(), _TestData.minValue(), _TestData.valueRange());
+        }
+        return space;
+    }
+
     public static void main(String[] args) {
         if (args.length != 1) {
             System.out.println(String.format("Usage: java -classpath <classpath> %s <property file path>", Main.class.getName()));
@@ -58,19 +83,33 @@ public class Main {
             System.exit(-1);
         }
 
-        SearchableSpace space = new ElitistSpace(Optional.of(_TestData));
+        // Fitness may be evaluated by a pool of worker processes, each of which loads the dataset for itself:
+        Optional<ProcessEvaluatorPool> evaluators = Optional.empty();
+        int numEvaluatorProcesses = Simulation.GetValue("numEvaluatorProcesses", 0);
+        if (numEvaluatorProcesses > 0) {
+            try {
+                evaluators = Optional.of(new ProcessEvaluatorPool(Arrays.asList(System.getProperty("java.home") + "/bin/java", "-classpath",
+                                                                                 System.getProperty("java.class.path"), EvaluatorMain.class.getName(), args[0]),
+                                                                  numEvaluatorProcesses,
+                                                                  Simulation.GetValue("evaluationBatchSize", 32),
+                                                                  Simulation.GetValue("evaluationPipelineDepth", 2)));
+                _ClustererDomain.setFitnessEvaluator(evaluators.get());
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.exit(-1);
+            }
+        }
 
+        // The clusterings evolve in a single space or, if there's more than one island, in an island for each:
         int numClusterings = Simulation.GetValue("numIndividuals", 100);
-
-        for (int i = 0; i < numClusterings; i++) {
-            ClusteringTestUtil.CreateRandomClustering(Optional.of((Space)space), _ClustererDomain,
-                                                      _ReproducerDomain, _TranscriberDomain, _TranslatorDomain, _KlonerDomain,
-                                                      Simulation.GetValue("initialDeletionMutationRate", 0.1),
-                                                      Simulation.GetValue("initialDuplicationMutationRate", 0.1),
-                                                      Simulation.GetValue("initialTranslocationMutationRate", 0.1),
-                                                      Simulation.GetValue("initialPointMutationRate", 0.1),
-                                                      Simulation.GetValue("minInitialNumPearls", 100), Simulation.GetValue("maxInitialNumPearls", 200),
-                                                      _TestData.getNumDimensions(), _TestData.minValue(), _TestData.valueRange());
+        int numIslands = Simulation.GetValue("numIslands", 1);
+        SearchableSpace space;
+        if (numIslands > 1) {
+            IslandSpace islands = new IslandSpace(Optional.of(_TestData));
+            for (int i = 0; i < numIslands; i++) islands.addIsland(CreateSpace(numClusterings/numIslands));
+            space = islands;
+        } else {
+            space = CreateSpace(numClusterings);
         }
 
         Optional<Individual> initialBest = space.best();
@@ -98,5 +137,13 @@ public class Main {
         Machine.FlushLogger();
 
         System.out.println("Best: " + space.best().get());
+
+        if (evaluators.isPresent()) {
+            try {
+                evaluators.get().close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
     }
 }
@@ -10,11 +10,15 @@ public class Observation {
     /** In order of dimensions, the values of this particular observation */
     protected Double[] _values;
 
+    /** The same values, unboxed, for when mismatches are calculated */
+    protected double[] _primitiveValues;
+
     /** Construct the instance using an array of values, ordered by dimension */
     public Observation(Double[] values, Dataset container) {
         assert(container.getNumDimensions() == values.length);
         _values = new Double[values.length];
         System.arraycopy(values, 0, _values, 0, values.length);
+        _primitiveValues = Arrays.stream(values).mapToDouble(v -> v).toArray();
     }
 
     public Stream<Double> stream() {
@@ -22,7 +26,12 @@ public class Observation {
     }
 
     public double getValue(int dimension) {
-        return _values[dimension];
+        return _primitiveValues[dimension];
+    }
+
+    /** Answer the values of the receiver, in order of dimension. The answer must not be changed. */
+    public double[] getValues() {
+        return _primitiveValues;
     }
 
     public int numDimensions() {
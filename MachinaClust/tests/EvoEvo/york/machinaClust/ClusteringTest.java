@@ -1,7 +1,14 @@
 package EvoEvo.york.machinaClust;
 
 import EvoEvo.york.machineMetaModel.Domain;
+import EvoEvo.york.machineMetaModel.ElitistSpace;
+import EvoEvo.york.machineMetaModel.GenomeSerializer;
+import EvoEvo.york.machineMetaModel.Individual;
+import EvoEvo.york.machineMetaModel.IslandCoordinator;
+import EvoEvo.york.machineMetaModel.IslandSpace;
+import EvoEvo.york.machineMetaModel.IslandWorker;
 import EvoEvo.york.machineMetaModel.Kloner;
+import EvoEvo.york.machineMetaModel.MetaModelException;
 import EvoEvo.york.machineMetaModel.MicrobialGASpace;
 import EvoEvo.york.machineMetaModel.Pearl;
 import EvoEvo.york.machineMetaModel.Reproducer;
@@ -12,8 +19,16 @@ import EvoEvo.york.machineMetaModel.Translator;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.testng.Assert.*;
 
@@ -83,4 +98,191 @@ public class ClusteringTest {
         assertEquals(attachedObservations, 10, "number of observations attached to core points");
     }
 
-}
\ No newline at end of file
+    @Test
+    public void compiledCorePointsHaveTheSameMismatchAsCorePoints() throws Exception {
+        ClusterableDataset data = new ClusterableDataset(5);
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        for (int i = 0; i < 20; i++) {
+            data.add(new Observation(new Double[]{r.nextDouble(), r.nextDouble(), r.nextDouble(), r.nextDouble(), r.nextDouble()}, data));
+        }
+        Space space = new MicrobialGASpace(Optional.of(data));
+        Clustering c1 = ClusteringTestUtil.CreateRandomClustering(Optional.of(space), _clustererDomain, _reproducerDomain, _transcriberDomain, _translatorDomain, _klonerDomain,
+                                                                  0.01, 0.01, 0.01, 0.01, 10, 20, data.getNumDimensions(), 2, -1);
+
+        ClusterCalculator cc = (ClusterCalculator)c1.locateMachine(ClusterCalculator.class);
+        CorePointArrays compiled = (CorePointArrays)cc.getPhenotype().get();
+        assertEquals(compiled.size(), cc.numCorePoints(), "Number of core points");
+        for (int c = 0; c < compiled.size(); c++) {
+            CorePoint cp = cc._corePoints.get(compiled._ids[c]);
+            for (Observation o : data) {
+                assertEquals(compiled.mismatch(c, o.getValues()), cp.calculateMismatch(o), 1e-12, "Mismatch");
+            }
+        }
+    }
+
+    @Test
+    public void batchEvaluationGivesTheSameFitnessAsEvaluatingEachClustering() throws Exception {
+        ClusterableDataset data = new ClusterableDataset(5);
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        for (int i = 0; i < ClusteringBatchEvaluator.BLOCK_SIZE + 100; i++) {
+            data.add(new Observation(new Double[]{r.nextDouble(), r.nextDouble(), r.nextDouble(), r.nextDouble(), r.nextDouble()}, data));
+        }
+        Space space = new MicrobialGASpace(Optional.of(data));
+        List<Individual> clusterings = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            clusterings.add(ClusteringTestUtil.CreateRandomClustering(Optional.of(space), _clustererDomain, _reproducerDomain, _transcriberDomain, _translatorDomain, _klonerDomain,
+                                                                      0.01, 0.01, 0.01, 0.01, 10, 20, data.getNumDimensions(), 2, -1));
+        }
+
+        new ClusteringBatchEvaluator(data).evaluate(clusterings);
+
+        for (Individual i : clusterings) {
+            assertTrue(i.isEvaluated(), "Evaluated");
+            ClusterCalculator cc = (ClusterCalculator)i.locateMachine(ClusterCalculator.class);
+            CorePointArrays compiled = cc.getCorePointArrays();
+            double mismatch = 0.0;
+            for (Observation o : data) {
+                double nearest = Double.POSITIVE_INFINITY;
+                for (int c = 0; c < compiled.size(); c++) {
+                    nearest = Math.min(nearest, compiled.corePoint(c).calculateMismatch(o));
+                }
+                mismatch += nearest;
+            }
+            assertEquals(i.fitnessKey(), mismatch, 1e-9, "Fitness key");
+            assertEquals(((Clustering)i).fitness(), -mismatch, 1e-9, "Fitness");
+        }
+    }
+
+    @Test
+    public void fitnessEvaluatedElsewhereIsTheSameAsEvaluatedLocally() throws Exception {
+        ClusterableDataset data = RandomData(200);
+        ClusteringType domain = new ClusteringType("Evaluated clusterer domain", data, 10, -2, 4);
+        Space space = new MicrobialGASpace(Optional.of(data));
+        Clustering local = ClusteringTestUtil.CreateRandomClustering(Optional.of(space), domain, _reproducerDomain, _transcriberDomain, _translatorDomain, _klonerDomain,
+                                                                     0.01, 0.01, 0.01, 0.01, 10, 20, data.getNumDimensions(), 2, -1);
+        GenomeSerializer serializer = new GenomeSerializer(Arrays.asList(domain, _reproducerDomain, _transcriberDomain, _translatorDomain, _klonerDomain));
+        byte[] genome = serializer.toBytes(local);
+        double expected = local.fitness();
+
+        // An evaluator that calculates the fitness from the packed code, as a worker process would:
+        AtomicInteger numEvaluations = new AtomicInteger();
+        domain.setFitnessEvaluator(p -> {
+            numEvaluations.incrementAndGet();
+            return CompletableFuture.completedFuture(domain.fitnessOf(p));
+        });
+        Clustering remote = (Clustering)serializer.fromBytes(genome, Clustering::new, Optional.of(space));
+        assertEquals(remote.fitness(), expected, 1e-9, "Fitness from the evaluator");
+        assertEquals(numEvaluations.get(), 1, "Evaluated by the evaluator");
+    }
+
+    @Test
+    public void requestEvaluationAsksForTheWholePopulationBeforeWaiting() throws Exception {
+        Space space = new MicrobialGASpace(Optional.of(RandomData(20)));
+        List<Individual> clusterings = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            clusterings.add(ClusteringTestUtil.CreateRandomClustering(Optional.of(space), _clustererDomain, _reproducerDomain, _transcriberDomain, _translatorDomain, _klonerDomain,
+                                                                      0.01, 0.01, 0.01, 0.01, 10, 20, 5, 2, -1));
+        }
+
+        // No answer is given until every clustering has been asked for, so answering them one at a time would give up waiting:
+        CountDownLatch asked = new CountDownLatch(clusterings.size());
+        _clustererDomain.setFitnessEvaluator(packedCode -> {
+            asked.countDown();
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return asked.await(10, TimeUnit.SECONDS) ? -Arrays.stream(packedCode).sum() : Double.NaN;
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        });
+        new ClusteringRequestEvaluator().evaluate(clusterings);
+
+        for (Individual i : clusterings) {
+            double expected = Arrays.stream(_clustererDomain.packedValues(i.locateMachine(ClusterCalculator.class).getCode())).sum();
+            assertTrue(i.isEvaluated(), "Evaluated");
+            assertEquals(i.fitnessKey(), expected, 1e-9, "Fitness key");
+        }
+    }
+
+    @Test
+    public void aGenomeCanBeWrittenAndReadBack() throws Exception {
+        ClusterableDataset data = RandomData(20);
+        Space space = new MicrobialGASpace(Optional.of(data));
+        Clustering c1 = ClusteringTestUtil.CreateRandomClustering(Optional.of(space), _clustererDomain, _reproducerDomain, _transcriberDomain, _translatorDomain, _klonerDomain,
+                                                                  0.01, 0.02, 0.03, 0.04, 10, 20, data.getNumDimensions(), 2, -1);
+        c1.setGeneration(7);
+        GenomeSerializer serializer = new GenomeSerializer(Arrays.asList(_clustererDomain, _reproducerDomain, _transcriberDomain, _translatorDomain, _klonerDomain));
+
+        Clustering c2 = (Clustering)serializer.fromBytes(serializer.toBytes(c1), Clustering::new, Optional.of(space));
+        assertEquals(c2.getGeneration(), 7, "Generation");
+        assertEquals(c2.getContainer().get(), space, "Container");
+        assertEquals(c2.locateMachine(ClusterCalculator.class).getCode(), c1.locateMachine(ClusterCalculator.class).getCode(), "Clusterer code");
+        Kloner k = (Kloner)c2.locateMachine(Kloner.class);
+        assertEquals(_klonerDomain.getPointMutationRate(k), 0.04, "Kloner code");
+        assertEquals(c2.fitness(), c1.fitness(), 1e-12, "Fitness");
+        assertNotNull(c2.replicate(), "Can replicate");
+    }
+
+    @Test
+    public void islandWorkersExchangeMigrantsOverLoopback() throws Exception {
+        ClusterableDataset data = RandomData(20);
+        GenomeSerializer serializer = new GenomeSerializer(Arrays.asList(_clustererDomain, _reproducerDomain, _transcriberDomain, _translatorDomain, _klonerDomain));
+        List<ElitistSpace> islands = new ArrayList<>();
+        List<Thread> workers = new ArrayList<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        try (IslandCoordinator coordinator = new IslandCoordinator(IslandSpace.Topology.RING)) {
+            for (int n = 0; n < 2; n++) {
+                ElitistSpace island = new ElitistSpace(Optional.of(data));
+                for (int i = 0; i < 6; i++) {
+                    ClusteringTestUtil.CreateRandomClustering(Optional.of(island), _clustererDomain, _reproducerDomain, _transcriberDomain, _translatorDomain, _klonerDomain,
+                                                              0.01, 0.01, 0.01, 0.01, 10, 20, data.getNumDimensions(), 2, -1);
+                }
+                islands.add(island);
+
+                int index = n;
+                IslandWorker worker = new IslandWorker(island, serializer, Clustering::new, 1, 1, IslandSpace.Emigrants.BEST);
+                Thread t = new Thread(() -> {
+                    try {
+                        worker.serve(coordinator.getPort(), index);
+                    } catch (Throwable e) {
+                        failure.set(e);
+                    }
+                });
+                t.start();
+                workers.add(t);
+            }
+            coordinator.connect(2);
+
+            double first = coordinator.search();
+            double second = coordinator.search();
+            assertTrue(second <= first, "Best key never gets worse");
+
+            Space home = new MicrobialGASpace(Optional.of(data));
+            Clustering best = (Clustering)coordinator.best(serializer, Clustering::new, Optional.of(home)).get();
+            assertEquals(-best.fitness(), coordinator.getBestKey(), 1e-9, "Best genome has the best key");
+        }
+        for (Thread t : workers) t.join(10000);
+
+        assertNull(failure.get(), "Worker failure");
+        islands.forEach(island -> assertEquals(island.numSubspaces(), 6, "Island population size"));
+    }
+
+    @Test (expectedExceptions = MetaModelException.class)
+    public void islandCoordinatorGivesUpOnAWorkerThatExitsBeforeConnecting() throws Exception {
+        try (IslandCoordinator coordinator = new IslandCoordinator(IslandSpace.Topology.RING)) {
+            coordinator.launch(Arrays.asList(System.getProperty("java.home") + "/bin/java", "NoSuchIslandWorker"), 0);
+            coordinator.connect(1);
+        }
+    }
+
+    private static ClusterableDataset RandomData(int numObservations) {
+        ClusterableDataset data = new ClusterableDataset(5);
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        for (int i = 0; i < numObservations; i++) {
+            data.add(new Observation(new Double[]{r.nextDouble(), r.nextDouble(), r.nextDouble(), r.nextDouble(), r.nextDouble()}, data));
+        }
+        return data;
+    }
+}
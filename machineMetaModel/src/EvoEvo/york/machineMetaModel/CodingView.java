@@ -0,0 +1,81 @@
+package EvoEvo.york.machineMetaModel;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Optional;
+import java.util.RandomAccess;
+
+/** A view of just the coding pearls of some packed code, used as the code of a transcription unit so that transcription need not copy
+ *  any pearls. The view holds the positions of the coding pearls in the packed code it views. If the view is changed then the coding
+ *  pearls are copied first and the change made to the copy, so the packed code being viewed is never changed. */
+public class CodingView extends AbstractList<Pearl> implements RandomAccess {
+    /** The code being viewed */
+    private final PackedCode _source;
+
+    /** The positions in the source of the coding pearls */
+    private final int[] _positions;
+
+    /** The copy of the coding pearls, once the view has been changed */
+    private Optional<PackedCode> _copy;
+
+    CodingView(PackedCode source, int[] positions) {
+        _source = source;
+        _positions = positions;
+        _copy = Optional.empty();
+    }
+
+    public Domain getDomain() {
+        return _source.getDomain();
+    }
+
+    @Override
+    public int size() {
+        return _copy.isPresent() ? _copy.get().size() : _positions.length;
+    }
+
+    /** Answer a newly decoded Pearl at the given position */
+    @Override
+    public Pearl get(int index) {
+        if (_copy.isPresent()) return _copy.get().get(index);
+        if (index < 0 || index >= _positions.length) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + _positions.length);
+        return _source.get(_positions[index]);
+    }
+
+    @Override
+    public Pearl set(int index, Pearl p) {
+        return this.copied().set(index, p);
+    }
+
+    @Override
+    public void add(int index, Pearl p) {
+        this.copied().add(index, p);
+        modCount++;
+    }
+
+    @Override
+    public Pearl remove(int index) {
+        Pearl result = this.copied().remove(index);
+        modCount++;
+        return result;
+    }
+
+    /** Answer the packed values of the coding pearls of the receiver, in order */
+    public double[] codingValues() {
+        return _copy.isPresent() ? _copy.get().codingValues() : _source.values(_positions);
+    }
+
+    /** Answer an exact copy of the receiver. Unless the receiver has been changed, the copy is another view of the same code. */
+    public List<Pearl> copy() {
+        return _copy.isPresent() ? _copy.get().copy() : new CodingView(_source, _positions);
+    }
+
+    /** Answer the copy of the coding pearls, first making it if need be */
+    private PackedCode copied() {
+        if (!_copy.isPresent()) {
+            PackedCode copy = new PackedCode(_source.getDomain(), _positions.length);
+            for (int position : _positions) copy.add(_source.get(position));
+            _copy = Optional.of(copy);
+        }
+        return _copy.get();
+    }
+}
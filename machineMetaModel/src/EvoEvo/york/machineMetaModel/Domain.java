@@ -1,8 +1,15 @@
 package EvoEvo.york.machineMetaModel;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Constructor;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Predicate;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -31,19 +38,196 @@ public class Domain {
      *  structures of that type are implemented by this mutator. */
     protected Mutator _mutator;
 
-    /** The type of machine that this domain relates to and which it encodes for. The domain uses this class, by reflection, to create new
-     *  instances of the machine type in question. */
+    /** Interface to which a codec must conform. A codec packs the state of a single pearl from its domain into a fixed number of
+     *  primitive values, and unpacks it again, so that the code of structures drawn from the domain can be held as a PackedCode rather than
+     *  as a list of individual Pearl objects. Whether a pearl is coding is recorded by the PackedCode itself and is not the codec's concern. */
+    public interface Codec {
+        /** Answer the number of values used to hold a single pearl */
+        int width();
+
+        /** Write the state of the supplied pearl into the values array, starting at offset */
+        void encode(Pearl p, double[] values, int offset);
+
+        /** Answer a new pearl whose state is read from the values array, starting at offset */
+        Pearl decode(double[] values, int offset);
+    }
+
+    /** The codec used to pack the code of structures drawn from this domain, if any. Domains without a codec hold their code as a
+     *  list of Pearl objects. */
+    protected Optional<Codec> _codec = Optional.empty();
+
+    public void setCodec(Codec codec) {
+        _codec = Optional.of(codec);
+    }
+
+    public Optional<Codec> getCodec() {
+        return _codec;
+    }
+
+    /** The test, if any, for whether a pearl of this domain is a promoter: the first pearl of a unit of transcription. A structure drawn from
+     *  a domain without promoters is a single unit of transcription. */
+    protected Optional<Predicate<Pearl>> _promoter = Optional.empty();
+
+    public void setPromoter(Predicate<Pearl> promoter) {
+        _promoter = Optional.of(promoter);
+    }
+
+    /** Answer true if the domain has promoters, so that its structures may contain several units of transcription */
+    public boolean hasPromoters() {
+        return _promoter.isPresent();
+    }
+
+    /** Answer true if the supplied pearl of this domain is a promoter */
+    public boolean isPromoter(Pearl p) {
+        return _promoter.isPresent() && _promoter.get().test(p);
+    }
+
+    /** The cache, if any, of the fitness of the machines constructed from this domain, keyed by the fingerprint of their code */
+    protected Optional<FitnessCache> _fitnessCache = Optional.empty();
+
+    /** Opt in to caching the fitness of the machines constructed from this domain, so that a machine whose code is the same as that of one
+     *  already evaluated need not be evaluated again. The domain must have a codec. */
+    public void setFitnessCache(FitnessCache cache) {
+        if (!_codec.isPresent()) throw new MetaModelException("Cannot cache fitness for a domain without a codec: " + _name);
+        _fitnessCache = Optional.of(cache);
+    }
+
+    public Optional<FitnessCache> getFitnessCache() {
+        return _fitnessCache;
+    }
+
+    /** The evaluator, if any, to which the evaluation of the fitness of the machines constructed from this domain is handed */
+    protected Optional<FitnessEvaluator> _fitnessEvaluator = Optional.empty();
+
+    /** Hand the evaluation of the fitness of the machines constructed from this domain to the supplied evaluator, perhaps in other processes,
+     *  rather than evaluating it in the machines themselves. The code of each machine is sent as packed values, so the domain must have a
+     *  codec. */
+    public void setFitnessEvaluator(FitnessEvaluator evaluator) {
+        if (!_codec.isPresent()) throw new MetaModelException("Cannot evaluate fitness elsewhere for a domain without a codec: " + _name);
+        _fitnessEvaluator = Optional.of(evaluator);
+    }
+
+    public Optional<FitnessEvaluator> getFitnessEvaluator() {
+        return _fitnessEvaluator;
+    }
+
+    /** The type of machine that this domain relates to and which it encodes for. */
     protected Class<? extends Machine> _machineType;
 
+    /** Interface to which a machine factory must conform. A factory constructs a new machine of the type that a domain encodes for, usually
+     *  by calling the (Space, List, Domain) constructor of that type, so a constructor reference such as ClusterCalculator::new will do. */
+    @FunctionalInterface
+    public interface MachineFactory {
+        Machine construct(Space environment, List<Pearl> code, Domain domain);
+    }
+
+    /** The factory used to construct new machines from this domain. If none has been registered then one that calls the machine type's
+     *  constructor is found, once per machine type, when the first machine is constructed. */
+    protected Optional<MachineFactory> _machineFactory = Optional.empty();
+
+    /** The maximum number of shared machines held by this domain */
+    private final int _sharedMachineCapacity = Simulation.GetValue("sharedMachineCacheSize", 64);
+
+    /** The machines constructed from this domain, if they are shared, keyed by their code and in order of use. One is answered again, rather
+     *  than constructing a new machine, when a machine with the same code is asked for. When the map is full the least recently used machine
+     *  is forgotten. */
+    private final Map<Object, Machine> _sharedMachines = new LinkedHashMap<Object, Machine>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, Machine> eldest) {
+            return this.size() > _sharedMachineCapacity;
+        }
+    };
+
+    /** The environment given to shared machines once they're constructed, so that they don't keep alive the individual for which they were
+     *  first constructed */
+    private static final Space _SharedEnvironment = new Space(Optional.empty()) {};
+
+    /** True once it has been logged that this domain's pearls can't be compared, so its machines are only shared when their code holds the
+     *  same pearls */
+    private volatile boolean _unshareableLogged = false;
+
+    /** The factories found for each machine type that has no registered factory, shared by all the domains for that type */
+    private static final ClassValue<MachineFactory> _ConstructorFactories = new ClassValue<MachineFactory>() {
+        @Override
+        protected MachineFactory computeValue(Class<?> machineType) {
+            return ConstructorFactory(machineType);
+        }
+    };
+
+    /** Register the factory used to construct the machines that this domain encodes for. The factory must construct machines of the
+     *  domain's machine type. */
+    public void setMachineFactory(MachineFactory factory) {
+        _machineFactory = Optional.of(factory);
+    }
+
     /** As part of the translation process, construct a new machine of the type described by this domain and initialise it
-     *  with the supplied list of pearls as its code.  */
+     *  with the supplied list of pearls as its code. If the machine type is shared and a machine with the same code has already been
+     *  constructed then answer that machine instead. */
     public Machine constructMachine(Space environment, List<Pearl> code) {
+        MachineFactory factory = _machineFactory.orElseGet(() -> _ConstructorFactories.get(_machineType));
+        if (!this.isShared()) return factory.construct(environment, code, this);
+
+        Object key = this.sharingKey(code);
+        synchronized (_sharedMachines) {
+            Machine shared = _sharedMachines.get(key);
+            if (shared != null) return shared;
+        }
+
+        Machine result = factory.construct(environment, code, this);
+        result.setEnvironment(_SharedEnvironment);
+        synchronized (_sharedMachines) {
+            Machine shared = _sharedMachines.putIfAbsent(key, result);
+            return shared == null ? result : shared;
+        }
+    }
+
+    /** Answer the key under which a shared machine with the supplied code is held. That's the code's fingerprint if it can be fingerprinted,
+     *  otherwise a copy of the code itself, which only matches other code if the pearls implement equals(). */
+    private Object sharingKey(List<Pearl> code) {
+        if (_codec.isPresent() || code instanceof PackedCode || code instanceof CodingView) return Fingerprint.Of(this, code);
+
+        if (!_unshareableLogged && !code.isEmpty() && !ComparesByValue(code.get(0))) {
+            _unshareableLogged = true;
+            _logger.warning(String.format("Pearls of domain %s don't implement equals() and it has no codec, so its machines are only shared when their code holds the same pearls", _name));
+        }
+        return new ArrayList<>(code);
+    }
+
+    /** True if the supplied pearl's class overrides equals(), so that two pearls may be equal without being the same instance */
+    private static boolean ComparesByValue(Pearl p) {
         try {
-            Constructor<? extends Machine> cons = _machineType.getConstructor(Space.class, List.class, Domain.class);
-            return cons.newInstance(environment, code, this);
+            return p.getClass().getMethod("equals", Object.class).getDeclaringClass() != Object.class;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /** True if the machines of the type described by this domain may be shared between individuals. Such machines implement the marker
+     *  interface SharedMachine. */
+    public boolean isShared() {
+        return SharedMachine.class.isAssignableFrom(_machineType);
+    }
+
+    /** Answer a factory that calls the (Space, List, Domain) constructor of the given machine type. The constructor is looked up once and
+     *  called through a method handle rather than reflectively. */
+    private static MachineFactory ConstructorFactory(Class<?> machineType) {
+        MethodHandle handle;
+        try {
+            Constructor<?> cons = machineType.getConstructor(Space.class, List.class, Domain.class);
+            handle = MethodHandles.lookup()
+                                  .unreflectConstructor(cons)
+                                  .asType(MethodType.methodType(Machine.class, Space.class, List.class, Domain.class));
         } catch (Exception e) {
-            throw new MetaModelException("Cannot construct machine of type " + _machineType.getName(), e);
+            throw new MetaModelException("Cannot construct machine of type " + machineType.getName(), e);
         }
+
+        return (environment, code, domain) -> {
+            try {
+                return (Machine)handle.invokeExact(environment, code, domain);
+            } catch (Throwable t) {
+                throw new MetaModelException("Cannot construct machine of type " + machineType.getName(), t);
+            }
+        };
     }
 
     /** True if the machine type represented by the receiver is deemed to be essential. Essential machines are those types that must exist in a new individual.
@@ -71,9 +255,43 @@ public class Domain {
 
     /** A local realisation of the Mutator interface that answers an exact copy of the supplied code. That is, it does no mutation at all. */
     public static List<Pearl> exactCopy(List<Pearl> l) {
+        if (l instanceof PackedCode) return ((PackedCode)l).copy();
+        if (l instanceof CodingView) return ((CodingView)l).copy();
         return l.stream().map(s -> s.klone()).collect(Collectors.toList());
     }
 
+    /** Answer a new, empty, code sequence for structures drawn from the receiver. This is packed if the receiver has a codec. */
+    public List<Pearl> newCode(int capacity) {
+        return _codec.isPresent() ? new PackedCode(this, capacity) : new ArrayList<>(capacity);
+    }
+
+    /** Answer the supplied code in the form in which the receiver's structures hold it. That is, if the receiver has a codec, answer the
+     *  code packed, or as a view of packed code; otherwise just answer it. */
+    public List<Pearl> adoptCode(List<Pearl> code) {
+        if (!_codec.isPresent() || code instanceof PackedCode || code instanceof CodingView) return code;
+        return PackedCode.Pack(this, code);
+    }
+
+    /** Compile the code of a machine of this domain into the form, such as an array of primitives, against which the machine executes, so
+     *  that it need not decode its pearls each time it's used. This is done once, when the machine is expressed, and the answer must not be
+     *  changed afterwards. Answer empty, as here, if the machine executes against its pearls. */
+    public Optional<Object> compile(List<Pearl> code) {
+        return Optional.empty();
+    }
+
+    /** Answer the packed values of all of the pearls of the supplied code, width values for each, packing them first if need be. The
+     *  receiver must have a codec. */
+    public double[] packedValues(List<Pearl> code) {
+        if (code instanceof PackedCode) return ((PackedCode)code).values();
+        if (code instanceof CodingView) return ((CodingView)code).codingValues();
+
+        Codec codec = _codec.orElseThrow(() -> new MetaModelException("Domain has no codec: " + _name));
+        int width = codec.width();
+        double[] result = new double[code.size() * width];
+        for (int i = 0; i < code.size(); i++) codec.encode(code.get(i), result, i * width);
+        return result;
+    }
+
     /** The provided structure is drawn from this domain. Answer a copy of the structure, potentially mutated.
      *  The invoking Kloner machine is also provided. */
     public Structure mutate(Structure initial, Kloner kloner) {
@@ -85,6 +303,14 @@ public class Domain {
 
     /** If the receiver is not the type of all of the pearls in the supplied list then complain with an exception */
     public void checkTypeOfAll(List<Pearl> list) {
+        if (list instanceof PackedCode) {
+            if (((PackedCode)list).getDomain() != this) throw new MetaModelException("Wrong Alphabet");
+            return;
+        }
+        if (list instanceof CodingView) {
+            if (((CodingView)list).getDomain() != this) throw new MetaModelException("Wrong Alphabet");
+            return;
+        }
         if (!list.stream().allMatch((s) -> s.isFrom(this))) {
             throw new MetaModelException("Wrong Alphabet");
         }
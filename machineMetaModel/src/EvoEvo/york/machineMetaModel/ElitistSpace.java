@@ -1,10 +1,15 @@
 package EvoEvo.york.machineMetaModel;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.Random;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /** A Searchable space that implements an algorithm where the best member of the space is retained at each generation
  *  and all others are replicat3ed */
@@ -13,6 +18,12 @@ public class ElitistSpace extends Space implements SearchableSpace {
 
     private Optional<Dataset> _dataset;
 
+    /** The evaluator, if any, used to evaluate all of the individuals that need it at once rather than one at a time */
+    private Optional<PopulationEvaluator> _evaluator = Optional.empty();
+
+    /** True while search() is breeding the next generation */
+    private volatile boolean _breeding = false;
+
     public ElitistSpace(Optional<Dataset> dataset) {
         super(Optional.empty());
         _dataset = dataset;
@@ -28,11 +39,18 @@ public class ElitistSpace extends Space implements SearchableSpace {
         return _dataset;
     }
 
+    /** Evaluate the individuals that need it all at once using the supplied evaluator. They are then evaluated in full, rather than
+     *  until it's clear they won't survive, but the evaluator may share much of the work between them. */
+    public void setPopulationEvaluator(PopulationEvaluator evaluator) {
+        _evaluator = Optional.of(evaluator);
+    }
+
     @Override
     public Optional<Individual> best() {
+        this.evaluatePopulation(this.getSubspaces());
         Optional<Space> best = this.getSubspaces()
                                         .stream()
-                                        .min((j1, j2) -> ((Individual)j1).compareTo((Individual)j2));
+                                        .min(Individual::CompareFitness);
         return Optional.of((Individual)best.get());
     }
 
@@ -53,31 +71,57 @@ public class ElitistSpace extends Space implements SearchableSpace {
     }
 
     /** Calculate the fitness of all contained individuals, throw away the worst half of them and allow the best
-     *  half to reproduce. Answer the best individual.. */
+     *  half to reproduce. Answer the best individual..
+     *
+     *  An individual that isn't yet evaluated only survives if it's fitter than the worst of those that were evaluated in earlier generations and
+     *  would survive. Its evaluation stops as soon as it's clear that it isn't. The fitness keys are all found, in parallel, before anything
+     *  else is done, and the survivors are then chosen by partially ordering the keys rather than sorting them. The survivors and their offspring
+     *  are built up in a second population array which replaces the first in one step. The offspring are evaluated in the next generation, so
+     *  the answer is the best of the survivors. */
     public Optional<Individual> search() {
-        int size = this.numSubspaces();
+        Space[] population = this.getSubspaces().toArray(new Space[0]);
+        int size = population.length;
 
-        // Delete the worst half of the individuals:
+        // Find the keys of all the individuals:
         int proportionToLeave = Simulation.GetValue("eliteProportion", 2);
-        int numToLeave = this.numSubspaces()/proportionToLeave;
-        Collection<Space> subspaces = this.getSubspaces();
-        subspaces
-                .parallelStream()
-                .sorted((j1,j2) -> ((Individual)j1).compareTo((Individual)j2))
-                .skip(numToLeave)
-                .forEach((s) -> this.removeSubspace(s));
-
-        // Replicate each of the remaining individuals sufficientsly to get back to the original population:
-        Collection<Space> individuals = this.getSubspaces();
-        individuals
-                .parallelStream()
-                .forEach((i) -> this.addReplicant(proportionToLeave, (Individual)i));
-
-        // Return the new best individual:
-        Individual result = (Individual)this.getSubspaces()
-                                      .parallelStream()
-                                      .min((j1, j2) -> ((Individual)j1).compareTo((Individual)j2))
-                                      .orElseThrow(() -> new MetaModelException("Cannot find best individual"));
+        int numToLeave = size/proportionToLeave;
+        if (numToLeave <= 0) throw new MetaModelException("Cannot find best individual");
+        this.evaluatePopulation(Arrays.asList(population));
+        double threshold = this.survivalThreshold(population, numToLeave);
+        double[] keys = IntStream.range(0, size)
+                                 .parallel()
+                                 .mapToDouble(i -> ((Individual)population[i]).fitnessKey(threshold))
+                                 .toArray();
+
+        // Choose the best of the individuals to survive, noting the very best of them as they're copied into the next generation:
+        int[] order = IntStream.range(0, size).toArray();
+        SelectSmallest(order, keys, size, numToLeave);
+        Space[] nextGeneration = new Space[numToLeave * proportionToLeave];
+        int best = order[0];
+        for (int s = 0; s < numToLeave; s++) {
+            nextGeneration[s] = population[order[s]];
+            if (keys[order[s]] < keys[best]) best = order[s];
+        }
+
+        // Replicate each of the survivors sufficiently to get back to the original population. The offspring are put straight into the
+        // next generation rather than being added to the receiver one at a time:
+        _breeding = true;
+        try {
+            IntStream.range(0, numToLeave)
+                     .parallel()
+                     .forEach(s -> {
+                         Individual parent = (Individual)nextGeneration[s];
+                         for (int c = 1; c < proportionToLeave; c++) {
+                             nextGeneration[numToLeave + s * (proportionToLeave - 1) + c - 1] = parent.replicate();
+                         }
+                     });
+        } finally {
+            _breeding = false;
+        }
+        this.replaceSubspaces(nextGeneration);
+
+        // Return the best of the survivors:
+        Individual result = (Individual)population[best];
         if (this.numSubspaces() == size) {
             return Optional.of(result);
         } else {
@@ -85,10 +129,76 @@ public class ElitistSpace extends Space implements SearchableSpace {
         }
     }
 
-    private void addReplicant(int proportionToLeave, Individual i) {
-        for (int c = 1; c < proportionToLeave; c++) {
-            Individual replicant = i.replicate();
-            this.addSubspace(replicant);
+    /** While a generation is being bred its offspring are collected by search(), so are not added to the receiver as they're cloned */
+    @Override
+    protected void acceptClone(Space clone) {
+        if (!_breeding) super.acceptClone(clone);
+    }
+
+    /** Partially order the first count entries of order, which are indices into keys, so that the first k of them are those with the k smallest
+     *  keys, in no particular order, and the k-th of them is that with the k-th smallest key. This is a quickselect, so takes time in proportion
+     *  to count rather than sorting. */
+    static void SelectSmallest(int[] order, double[] keys, int count, int k) {
+        int from = 0;
+        int to = count;
+        Random r = ThreadLocalRandom.current();
+        while (to - from > 1) {
+            double pivot = keys[order[from + r.nextInt(to - from)]];
+
+            // Partition into those less than the pivot, those equal to it and those greater than it:
+            int lt = from;
+            int gt = to;
+            int i = from;
+            while (i < gt) {
+                double key = keys[order[i]];
+                if (key < pivot) {
+                    Swap(order, lt++, i++);
+                } else if (key > pivot) {
+                    Swap(order, i, --gt);
+                } else {
+                    i++;
+                }
+            }
+
+            if (k <= lt) {
+                to = lt;
+            } else if (k > gt) {
+                from = gt;
+            } else {
+                return;
+            }
         }
     }
+
+    private static void Swap(int[] order, int i, int j) {
+        int t = order[i];
+        order[i] = order[j];
+        order[j] = t;
+    }
+
+    /** If there's a population evaluator, use it to evaluate those of the supplied individuals that have not yet been evaluated */
+    private void evaluatePopulation(Collection<Space> individuals) {
+        if (!_evaluator.isPresent()) return;
+
+        List<Individual> unevaluated = individuals.stream()
+                                                  .map(s -> (Individual)s)
+                                                  .filter(i -> !i.isEvaluated())
+                                                  .collect(Collectors.toList());
+        if (!unevaluated.isEmpty()) _evaluator.get().evaluate(unevaluated);
+    }
+
+    /** Answer the fitness key of the worst of the given number of survivors, if there are enough individuals that have already been
+     *  evaluated to know it. If not, answer infinity so that every individual is evaluated in full. */
+    private double survivalThreshold(Space[] individuals, int numToLeave) {
+        double[] keys = Arrays.stream(individuals)
+                              .map(s -> (Individual)s)
+                              .filter(Individual::isEvaluated)
+                              .mapToDouble(Individual::fitnessKey)
+                              .toArray();
+        if (keys.length < numToLeave) return Double.POSITIVE_INFINITY;
+
+        int[] order = IntStream.range(0, keys.length).toArray();
+        SelectSmallest(order, keys, keys.length, numToLeave);
+        return keys[order[numToLeave - 1]];
+    }
 }
@@ -0,0 +1,39 @@
+package EvoEvo.york.machineMetaModel;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.function.ToDoubleFunction;
+
+/** The worker side of a ProcessEvaluatorPool. A worker runs in a process of its own, having set up whatever it needs to evaluate fitness,
+ *  such as the dataset, once. It connects to the pool by a loopback socket and then evaluates batches of packed code, answering the
+ *  fitness of each, until the pool asks it to stop. */
+public class EvaluatorWorker {
+    /** Connect to the pool listening on the given loopback port, identify the receiver by the given index, and evaluate each batch of packed
+     *  code the pool sends with the supplied function. A batch is its size followed by each packed code as its length and its values; the
+     *  answer is the fitness of each, in order. A batch size of less than zero asks the worker to stop. */
+    public static void Serve(int port, int index, ToDoubleFunction<double[]> fitness) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeInt(index);
+            out.flush();
+
+            int batchSize;
+            while ((batchSize = in.readInt()) >= 0) {
+                double[] results = new double[batchSize];
+                for (int i = 0; i < batchSize; i++) {
+                    double[] packed = new double[in.readInt()];
+                    for (int v = 0; v < packed.length; v++) packed[v] = in.readDouble();
+                    results[i] = fitness.applyAsDouble(packed);
+                }
+                for (double r : results) out.writeDouble(r);
+                out.flush();
+            }
+        }
+    }
+}
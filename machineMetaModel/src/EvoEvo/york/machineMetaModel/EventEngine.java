@@ -0,0 +1,157 @@
+package EvoEvo.york.machineMetaModel;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/** A discrete-event simulation engine. Rather than running sites and spaces as tasks paced by the wall clock, they're scheduled as events at
+ *  times on a virtual clock, and the events are run one after another in time order, as fast as they can be. Events at the same time are
+ *  run in the order in which they were scheduled, so the order of a run doesn't depend on the speed of the machine or the scheduling of
+ *  threads. Sites that are empty have nothing to do, so they're left out of the queue until they become occupied. */
+public class EventEngine {
+    /** A task to be run at a time on the virtual clock, and again every period thereafter */
+    private static class Event implements Comparable<Event> {
+        final double _time;
+        final long _sequence;
+        final Runnable _task;
+        final double _period;
+
+        Event(double time, long sequence, Runnable task, double period) {
+            _time = time;
+            _sequence = sequence;
+            _task = task;
+            _period = period;
+        }
+
+        @Override
+        public int compareTo(Event e) {
+            int result = Double.compare(_time, e._time);
+            return result != 0 ? result : Long.compare(_sequence, e._sequence);
+        }
+    }
+
+    private final PriorityQueue<Event> _events = new PriorityQueue<>();
+
+    /** The number of events scheduled so far, which orders events at the same time */
+    private long _sequence = 0;
+
+    private double _now = 0.0;
+
+    private long _numEventsRun = 0;
+
+    /** The sites that are empty and so not scheduled, and the period at which each is run when it's occupied */
+    private final ConcurrentHashMap<Space, Double> _dormantSites = new ConcurrentHashMap<>();
+
+    /** The dormant sites that have become occupied since the last event, waiting to be scheduled again */
+    private final Queue<Space> _woken = new ConcurrentLinkedQueue<>();
+
+    /** The position of each scheduled site amongst all of the sites scheduled, in the order of their spaces' subspaces */
+    private final Map<Space, Integer> _siteOrder = new HashMap<>();
+
+    /** Answer the time on the virtual clock */
+    public double getTime() {
+        return _now;
+    }
+
+    /** Answer the number of events that have been run */
+    public long getNumEventsRun() {
+        return _numEventsRun;
+    }
+
+    /** Answer the number of events waiting to be run */
+    public int numEvents() {
+        return _events.size();
+    }
+
+    /** Schedule a task to be run after the given delay on the virtual clock, and then every period thereafter. A period of zero or less means
+     *  that the task is run just once. */
+    public void schedule(Runnable task, double delay, double period) {
+        _events.add(new Event(_now + delay, _sequence++, task, period));
+    }
+
+    /** Schedule each of the sites of the supplied space to be run every period, each in the order of the space's subspaces. A site that's
+     *  empty, or becomes empty, isn't run again until it becomes occupied. */
+    public void scheduleSites(Toroidal2DSpace space, double period) {
+        space.addOccupancyObserver(site -> {
+            if (!site.isEmpty() && _dormantSites.containsKey(site)) _woken.add(site);
+        });
+        for (Space s : space.getSubspaces()) {
+            _siteOrder.put(s, _siteOrder.size());
+            if (s.isEmpty()) {
+                _dormantSites.put(s, period);
+            } else {
+                this.schedule(new SiteEvent((Site)s, period), 0.0, period);
+            }
+        }
+    }
+
+    /** The task that runs a site, which lets the site lie dormant if it's empty */
+    private class SiteEvent implements Runnable {
+        final Site _site;
+        final double _period;
+
+        SiteEvent(Site site, double period) {
+            _site = site;
+            _period = period;
+        }
+
+        @Override
+        public void run() {
+            if (!_site.isEmpty()) _site.run();
+        }
+
+        /** True if the site is still occupied, and so should be run again */
+        boolean isLive() {
+            if (!_site.isEmpty()) return true;
+            _dormantSites.put(_site, _period);
+
+            // The site may have been filled again just before it was marked as dormant:
+            if (!_site.isEmpty() && _dormantSites.remove(_site) != null) return true;
+            return false;
+        }
+    }
+
+    /** Run all of the events up to and including the given time on the virtual clock, which is then moved on to that time. Answer the number
+     *  of events that were run. */
+    public long runUntil(double time) {
+        long numRun = 0;
+        while (true) {
+            this.scheduleWokenSites();
+            Event next = _events.peek();
+            if (next == null || next._time > time) break;
+
+            _events.poll();
+            _now = next._time;
+            next._task.run();
+            numRun++;
+
+            boolean again = next._period > 0 && (!(next._task instanceof SiteEvent) || ((SiteEvent)next._task).isLive());
+            if (again) _events.add(new Event(_now + next._period, _sequence++, next._task, next._period));
+        }
+        _now = Math.max(_now, time);
+        _numEventsRun += numRun;
+        return numRun;
+    }
+
+    /** Schedule the sites that have become occupied since they went dormant, to be run after their period. They're scheduled in the order of
+     *  the sites in their space rather than that in which they were filled, which may be that of a hash set or of threads, so that a run is
+     *  repeated exactly. */
+    private void scheduleWokenSites() {
+        if (_woken.isEmpty()) return;
+
+        List<Space> woken = new ArrayList<>();
+        Space site;
+        while ((site = _woken.poll()) != null) woken.add(site);
+        woken.sort(Comparator.comparingInt(_siteOrder::get));
+        for (Space s : woken) {
+            Double period = _dormantSites.remove(s);
+            if (period != null) this.schedule(new SiteEvent((Site)s, period), period, period);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package EvoEvo.york.machineMetaModel;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+
+/** A strong hash, SHA-256, of the coding pearls of some code and of the domain from which they're drawn. Two sequences of code with the
+ *  same fingerprint code for the same machine, so a fingerprint may be used to key anything that depends only on what a machine is. */
+public final class Fingerprint {
+    /** The digests used to calculate fingerprints, one per thread as they hold state */
+    private static final ThreadLocal<MessageDigest> _Digests = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new MetaModelException("Cannot calculate fingerprints", e);
+        }
+    });
+
+    private final byte[] _digest;
+    private final int _hashCode;
+
+    private Fingerprint(byte[] digest) {
+        _digest = digest;
+        _hashCode = Arrays.hashCode(digest);
+    }
+
+    /** Answer the fingerprint of the code of the supplied structure */
+    public static Fingerprint Of(Structure s) {
+        return Of(s.getDomain(), s.getCode());
+    }
+
+    /** Answer the fingerprint of the coding pearls of the supplied code, all of which are from the supplied domain. The domain must have a
+     *  codec, as it's the packed values of the pearls that are hashed. */
+    public static Fingerprint Of(Domain domain, List<Pearl> code) {
+        double[] values = CodingValues(domain, code);
+
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * Double.BYTES);
+        for (double v : values) buffer.putDouble(v);
+
+        MessageDigest digest = _Digests.get();
+        digest.reset();
+        digest.update(domain._name.getBytes(StandardCharsets.UTF_8));
+        digest.update(domain.getMachineType().getName().getBytes(StandardCharsets.UTF_8));
+        digest.update(buffer.array());
+        return new Fingerprint(digest.digest());
+    }
+
+    /** Answer the packed values of the coding pearls of the supplied code, packing them first if need be */
+    private static double[] CodingValues(Domain domain, List<Pearl> code) {
+        if (code instanceof PackedCode) return ((PackedCode)code).codingValues();
+        if (code instanceof CodingView) return ((CodingView)code).codingValues();
+
+        Domain.Codec codec = domain.getCodec().orElseThrow(() -> new MetaModelException("Cannot fingerprint code of a domain without a codec: " + domain._name));
+        int width = codec.width();
+        double[] result = new double[code.size() * width];
+        int count = 0;
+        for (Pearl p : code) {
+            if (p.isCoding()) codec.encode(p, result, width * count++);
+        }
+        return Arrays.copyOf(result, width * count);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof Fingerprint && Arrays.equals(_digest, ((Fingerprint)obj)._digest);
+    }
+
+    @Override
+    public int hashCode() {
+        return _hashCode;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder(_digest.length * 2);
+        for (byte d : _digest) b.append(String.format("%02x", d));
+        return b.toString();
+    }
+}
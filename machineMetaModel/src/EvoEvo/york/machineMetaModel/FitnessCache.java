@@ -0,0 +1,84 @@
+package EvoEvo.york.machineMetaModel;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleSupplier;
+
+/** A bounded cache of fitness values keyed by the fingerprint of the code that was evaluated. When the cache is full the least recently used
+ *  value is forgotten. The cache may be used by several threads at once; the evaluation of a value that isn't cached is done without holding
+ *  the cache's lock, so two threads may occasionally evaluate the same code, but evaluations of different code are never serialised. */
+public class FitnessCache {
+    /** The maximum number of values held */
+    private final int _capacity;
+
+    /** The cached values, in order of use */
+    private final Map<Fingerprint, Double> _values;
+
+    private final AtomicLong _hits = new AtomicLong(0);
+    private final AtomicLong _misses = new AtomicLong(0);
+
+    public FitnessCache(int capacity) {
+        if (capacity <= 0) throw new MetaModelException("Fitness cache capacity must be positive: " + capacity);
+        _capacity = capacity;
+        _values = new LinkedHashMap<Fingerprint, Double>(Math.min(capacity, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Fingerprint, Double> eldest) {
+                return this.size() > _capacity;
+            }
+        };
+    }
+
+    /** Answer the cached value for the supplied fingerprint, if any, counting the hit or miss */
+    public Optional<Double> get(Fingerprint key) {
+        Double result;
+        synchronized (_values) {
+            result = _values.get(key);
+        }
+        (result == null ? _misses : _hits).incrementAndGet();
+        return Optional.ofNullable(result);
+    }
+
+    public void put(Fingerprint key, double value) {
+        synchronized (_values) {
+            _values.put(key, value);
+        }
+    }
+
+    /** Answer the cached value for the supplied fingerprint, evaluating and caching it if there isn't one */
+    public double computeIfAbsent(Fingerprint key, DoubleSupplier evaluation) {
+        Optional<Double> cached = this.get(key);
+        if (cached.isPresent()) return cached.get();
+
+        double result = evaluation.getAsDouble();
+        this.put(key, result);
+        return result;
+    }
+
+    public long getHits() {
+        return _hits.get();
+    }
+
+    public long getMisses() {
+        return _misses.get();
+    }
+
+    public int size() {
+        synchronized (_values) {
+            return _values.size();
+        }
+    }
+
+    /** Forget all of the cached values, as should be done if whatever the values were evaluated against changes */
+    public void clear() {
+        synchronized (_values) {
+            _values.clear();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("FitnessCache[%d/%d, hits %d, misses %d]", this.size(), _capacity, _hits.get(), _misses.get());
+    }
+}
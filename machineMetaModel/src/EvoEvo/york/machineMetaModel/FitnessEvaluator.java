@@ -0,0 +1,13 @@
+package EvoEvo.york.machineMetaModel;
+
+import java.util.concurrent.CompletableFuture;
+
+/** Interface to which an evaluator of fitness must conform. The evaluator is handed the code of a machine, packed by its domain's codec,
+ *  and answers the fitness of the machine as its domain measures it, such as a clustering's fitness or a journey's time. The answer is a
+ *  future so that the evaluator may batch many requests together, and evaluate them elsewhere, such as in other processes. A
+ *  FunctionalInterface so that lambda expressions may be used to realise it. */
+@FunctionalInterface
+public interface FitnessEvaluator {
+    /** Answer, eventually, the fitness of the machine whose code is packed into the given values */
+    CompletableFuture<Double> evaluate(double[] packedCode);
+}
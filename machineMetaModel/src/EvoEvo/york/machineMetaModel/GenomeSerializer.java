@@ -0,0 +1,107 @@
+package EvoEvo.york.machineMetaModel;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+
+/** Writes the genome of an individual, that is its machine template repository, as a sequence of primitive values, and reads it back into a
+ *  new individual, perhaps in another process. Each structure is written as the name of its domain followed by its pearls, each packed by
+ *  the domain's codec, so every domain with any code must have a codec. The domains are matched by name when a genome is read, so each
+ *  process must set up the same domains. */
+public class GenomeSerializer {
+    /** The domains that a genome may use, mapped from their names */
+    private final Map<String, Domain> _domains = new HashMap<>();
+
+    public GenomeSerializer(Collection<Domain> domains) {
+        domains.forEach(d -> _domains.put(d._name, d));
+    }
+
+    /** Write the generation and the genome of the supplied individual */
+    public void write(Individual individual, DataOutput out) throws IOException {
+        Set<Structure> repository = individual.getRepository();
+        out.writeInt(individual.getGeneration());
+        out.writeInt(repository.size());
+        for (Structure s : repository) {
+            Domain domain = s.getDomain();
+            List<Pearl> code = s.getCode();
+            out.writeUTF(domain._name);
+            out.writeInt(code.size());
+            if (code.isEmpty()) continue;
+
+            Domain.Codec codec = domain.getCodec().orElseThrow(() -> new MetaModelException("Domain has no codec: " + domain._name));
+            double[] values = new double[codec.width()];
+            for (Pearl p : code) {
+                codec.encode(p, values, 0);
+                out.writeBoolean(p.isCoding());
+                for (double v : values) out.writeDouble(v);
+            }
+        }
+    }
+
+    /** Read a genome written by write() into a new individual, made by the factory in the given container. The individual's essential
+     *  machines are constructed directly from their templates, as Util.AddTTMachines() does, and the others are expressed when they're
+     *  first needed. */
+    public Individual read(DataInput in, Function<Optional<Space>, Individual> factory, Optional<Space> container) throws IOException {
+        int generation = in.readInt();
+        int numStructures = in.readInt();
+        Individual result = factory.apply(container);
+        result.setGeneration(generation);
+
+        Set<Structure> repository = new HashSet<>();
+        for (int s = 0; s < numStructures; s++) {
+            String name = in.readUTF();
+            Domain domain = Optional.ofNullable(_domains.get(name)).orElseThrow(() -> new MetaModelException("Unknown domain: " + name));
+            int size = in.readInt();
+            List<Pearl> code = new ArrayList<>(size);
+            if (size > 0) {
+                Domain.Codec codec = domain.getCodec().orElseThrow(() -> new MetaModelException("Domain has no codec: " + name));
+                double[] values = new double[codec.width()];
+                for (int p = 0; p < size; p++) {
+                    boolean coding = in.readBoolean();
+                    for (int v = 0; v < values.length; v++) values[v] = in.readDouble();
+                    code.add(codec.decode(values, 0).setCoding(coding));
+                }
+            }
+            repository.add(new Structure(result, code, domain));
+        }
+        result.setRepository(repository);
+
+        repository.stream()
+                  .filter(s -> s.getDomain().isEssential())
+                  .forEach(s -> result.addMachine(s.getDomain().constructMachine(result, s.getCode())));
+        return result;
+    }
+
+    /** Answer the genome of the supplied individual as an array of bytes */
+    public byte[] toBytes(Individual individual) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            this.write(individual, out);
+        } catch (IOException e) {
+            throw new MetaModelException("Cannot write genome", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Read a genome from an array of bytes answered by toBytes() */
+    public Individual fromBytes(byte[] genome, Function<Optional<Space>, Individual> factory, Optional<Space> container) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(genome))) {
+            return this.read(in, factory, container);
+        } catch (IOException e) {
+            throw new MetaModelException("Cannot read genome", e);
+        }
+    }
+}
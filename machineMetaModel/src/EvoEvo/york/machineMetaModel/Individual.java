@@ -1,47 +1,87 @@
 package EvoEvo.york.machineMetaModel;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
 /** A specific type of space that represents an individual "organism". (Not a type, a specific instance.) Such an
  *  object is required to have at least an instance of all machine that realise the EssentialMachine interface.
- *  As such, behaviour to ensure this is included. */
+ *  As such, behaviour to ensure this is included.
+ *
+ *  Once an individual has been born its repository does not change and its machines, once expressed, are never replaced. Both are held
+ *  as unmodifiable sets that are replaced, rather than changed, by the few methods that add to them, so they can be read without locking.
+ *  Only the expression of machines, which happens once per machine type, takes the individual's lock. */
 public abstract class Individual extends Space
                                  implements Comparable<Individual> {
     private final static Logger _logger = Logger.getLogger("EvoEvo");
 
     /** The number of times this specific individual has replicated */
-    protected int _replicationCount = 0;
+    protected AtomicInteger _replicationCount = new AtomicInteger(0);
 
     /** The generation count of this particular instance. */
     protected int _generation;
 
+    /** The receiver's fitness key, by which individuals are ordered with smaller keys being better, or NaN if it's not yet been calculated. */
+    private volatile double _fitnessKey = Double.NaN;
+
+    /** The greatest amount that the receiver's fitness key is known to be no less than, found by evaluations that were cut off */
+    private volatile double _fitnessBound = Double.NEGATIVE_INFINITY;
+
     /** The set of structures that constitute the templates for machines made within this individual. */
-    protected Set<Structure> _repository;
+    protected volatile Set<Structure> _repository;
 
     /** The machines that exist within this individual, each of which is the result of expressing something
      *  from the machine template repository (aka repository). Some of the machines might, though, have been expressed
      *  from the "parent" individual's repository during replication and implanted directly into this object. */
-    protected Set<Machine> _machines;
+    protected volatile Set<Machine> _machines;
+
+    /** The machines already located by locateMachine, indexed by the slot of the requested machine type. The array is replaced, never
+     *  changed, so that it can be read without holding the individual's lock. */
+    private volatile Machine[] _machineIndex;
+
+    private static final Machine[] _EmptyIndex = new Machine[0];
+
+    /** If the expression of the receiver's essential machines has been deferred, the transcriber and translator with which they're to be
+     *  expressed when a machine is first needed. */
+    private Optional<Transcriber> _pendingTranscriber = Optional.empty();
+    private Optional<Translator> _pendingTranslator = Optional.empty();
+
+    /** The number of machine types that have been allocated a slot */
+    private static final AtomicInteger _NumSlots = new AtomicInteger(0);
+
+    /** The slot in every individual's machine index allocated to each machine type that is asked for by locateMachine */
+    private static final ClassValue<Integer> _Slots = new ClassValue<Integer>() {
+        @Override
+        protected Integer computeValue(Class<?> machineType) {
+            return _NumSlots.getAndIncrement();
+        }
+    };
 
     /** Construct an empty new object within the supplied container. */
     public Individual(Optional<Space> container) {
         super(container);
-        _machines = new HashSet<>();
-        _repository = new HashSet<>();
+        _machines = Collections.emptySet();
+        _machineIndex = _EmptyIndex;
+        _repository = Collections.emptySet();
         _generation = 0;
     }
 
     /** Replicate this individual using the reproducer that should be available. Answer the new individual. */
-    public synchronized Individual replicate() {
-        _replicationCount++;
-        Machine reproducer = this.locateMachine(Reproducer.class);
-        Individual result = (Individual)reproducer.doIt().getEnvironment();
+    public Individual replicate() {
+        int replicationCount = _replicationCount.incrementAndGet();
+        Reproducer reproducer = (Reproducer)this.locateMachine(Reproducer.class);
+        Individual result = (Individual)reproducer.reproduce(this).getEnvironment();
 
-        _logger.finer(String.format("{%d} Replicating individual, replication count is now %d. %s yields %s", System.currentTimeMillis(), _replicationCount, this, result));
+        _logger.finer(String.format("{%d} Replicating individual, replication count is now %d. %s yields %s", System.currentTimeMillis(), replicationCount, this, result));
 
         return result;
     }
@@ -50,18 +90,100 @@ public abstract class Individual extends Space
     @Override
     protected synchronized Object clone() throws CloneNotSupportedException {
         Individual result = (Individual)super.clone();
-        result._machines = new HashSet<>();
-        result._repository = new HashSet<>();
-        result._replicationCount = 0;
+        result._machines = Collections.emptySet();
+        result._machineIndex = _EmptyIndex;
+        result._pendingTranscriber = Optional.empty();
+        result._pendingTranslator = Optional.empty();
+        result._repository = Collections.emptySet();
+        result._replicationCount = new AtomicInteger(0);
+        result._fitnessKey = Double.NaN;
+        result._fitnessBound = Double.NEGATIVE_INFINITY;
+        return result;
+    }
+
+    /** Answer the receiver's fitness key. The smaller the key, the fitter the individual. The key is calculated once, when it's first needed, and
+     *  after that is just a field read, so individuals may be sorted and compared without locating any machines. */
+    public double fitnessKey() {
+        double result = _fitnessKey;
+        if (Double.isNaN(result)) {
+            result = this.calculateFitnessKey();
+            _fitnessKey = result;
+        }
+        return result;
+    }
+
+    /** Answer the receiver's fitness key if it's less than the cutoff. If not, answer an amount of at least the cutoff that the key is known
+     *  to be no less than. This is for when an individual is only of interest if it's fitter than some threshold, as the calculation of its
+     *  key can then stop as soon as it's clear that it isn't. */
+    public double fitnessKey(double cutoff) {
+        double result = _fitnessKey;
+        if (!Double.isNaN(result)) return result;
+        double bound = _fitnessBound;
+        if (bound >= cutoff) return bound;
+
+        result = this.calculateFitnessKey(cutoff);
+        if (result < cutoff) {
+            _fitnessKey = result;
+        } else {
+            _fitnessBound = result;
+        }
         return result;
     }
 
+    /** Set the receiver's fitness key, as calculated elsewhere, for example by a PopulationEvaluator */
+    public void setFitnessKey(double key) {
+        _fitnessKey = key;
+    }
+
+    /** Answer true if the receiver's fitness key has been calculated in full */
+    public boolean isEvaluated() {
+        return !Double.isNaN(_fitnessKey);
+    }
+
+    /** Calculate the receiver's fitness key, smaller being fitter. Subclasses that can be searched for the fittest should override this, using
+     *  whichever machines calculate their fitness. */
+    protected double calculateFitnessKey() {
+        return 0.0;
+    }
+
+    /** Calculate the receiver's fitness key if it's less than the cutoff or, if not, answer an amount of at least the cutoff that the key is
+     *  no less than. Subclasses whose fitness is the sum of many costs should override this to stop adding as soon as the cutoff is reached. */
+    protected double calculateFitnessKey(double cutoff) {
+        return this.calculateFitnessKey();
+    }
+
+    /** Compare two spaces, each of which is an individual, by their fitness keys. The fitter of the two is the lesser. */
+    public static int CompareFitness(Space s1, Space s2) {
+        return Double.compare(((Individual)s1).fitnessKey(), ((Individual)s2).fitnessKey());
+    }
+
     /** Require that concrete subclasses implement a runnable-like method. */
     public abstract void run();
 
     /** Look to see if we've got a machine of the requested type. If so, return it. If not then
-     *  locate the appropriate part, if any, of the machine template repository and express the desired machine */
-    public synchronized Machine locateMachine(final Class<? extends Machine> machineType) {
+     *  locate the appropriate part, if any, of the machine template repository and express the desired machine.
+     *  Once a machine of a given type has been located it is remembered, so that locating it again is just an array read without locking. */
+    public Machine locateMachine(final Class<? extends Machine> machineType) {
+        int slot = _Slots.get(machineType);
+        Machine[] index = _machineIndex;
+        if (slot < index.length && index[slot] != null) return index[slot];
+
+        Machine result = this.findOrExpressMachine(machineType);
+        this.indexMachine(slot, result);
+        return result;
+    }
+
+    /** Remember that the supplied machine is the one to answer when a machine of the type with the given slot is requested */
+    private synchronized void indexMachine(int slot, Machine m) {
+        Machine[] index = Arrays.copyOf(_machineIndex, Math.max(_machineIndex.length, slot + 1));
+        index[slot] = m;
+        _machineIndex = index;
+    }
+
+    /** Find a machine of the requested type, expressing one from the machine template repository if need be */
+    private synchronized Machine findOrExpressMachine(final Class<? extends Machine> machineType) {
+        this.expressDeferredMachines();
+
         // If we've already got a machine of the right sort then find it and return it. Note that this will
         // also find subclasses of the requested type.
         Optional<Machine> t = this.findMachine((Machine m) -> machineType.isAssignableFrom(m.getClass()));
@@ -69,9 +191,10 @@ public abstract class Individual extends Space
 
         // Find all components of the machine template repository that describe machines of the requested type and express them into
         // the local environment:
-        _repository.stream()
-                   .filter(s -> machineType.isAssignableFrom(s.getDomain().getMachineType()))
-                   .forEach(s -> this.addMachine(this.expressMachine(s)));
+        List<Structure> templates = _repository.stream()
+                                               .filter(s -> machineType.isAssignableFrom(s.getDomain().getMachineType()))
+                                               .collect(Collectors.toList());
+        this.expressMachines(templates).forEach(m -> this.addMachine(m));
 
         // Now find and return one of the new machines:
         return this.findMachine(m -> machineType.isAssignableFrom(m.getClass()))
@@ -80,57 +203,105 @@ public abstract class Individual extends Space
 
     /** Retrieve the first found machine of the receiver's contained machines
      *  that satisfies the supplied predicate */
-    protected synchronized Optional<Machine> findMachine(Predicate<Machine> p) {
+    protected Optional<Machine> findMachine(Predicate<Machine> p) {
         return _machines.stream().filter(p).findFirst();
     }
 
     /** The supplied structure is part of the machine template repository and, as such, defines a specific sort of machine although
      *  perhaps with a mutated genome. Express the machine that is defined by this structure and add it to the set of machines that exists within
-     *  the receiver. This is going to be a very controlled process of transcription and translation. Later on, perhaps, it should be made more
-     *  independent and asynchronous. */
-    public synchronized Machine expressMachine(Structure s) {
+     *  the receiver. This is going to be a very controlled process of transcription and translation. See expressMachineAsync() for a version
+     *  that is more independent and asynchronous. */
+    public Machine expressMachine(Structure s) {
         // Find a transcriber machine. Note that this implies such a machine must always exist and the process of individual
         // replication ensures that this is so:
         Transcriber t = (Transcriber)this.locateMachine(Transcriber.class);
 
         // Here assume that we use the whole structure for transcription without the need for a begin and end location
-        t.setSource(s);
-        Structure transcriptionUnit = t.doIt();
+        Structure transcriptionUnit = t.transcribe(s);
 
         // Given the transcription unit, express the machine that that structure codes for using a translator machine
         // Again, the assumption at the moment is that only a single machine is coded for by the transcription unit and,
         // therefore, no begin and end locations are required.
         Translator tu = (Translator)this.locateMachine(Translator.class);
-        tu.setSource(transcriptionUnit);
-        return (Machine)tu.doIt();
+        return tu.translate(transcriptionUnit, this);
+    }
+
+    /** Express the machine defined by the supplied structure, as expressMachine() does, but asynchronously on the simulation's executor.
+     *  The receiver's transcriber and translator are located before answering, so the expression itself needs no lock on the receiver. */
+    public CompletableFuture<Machine> expressMachineAsync(Structure s) {
+        Transcriber t = (Transcriber)this.locateMachine(Transcriber.class);
+        Translator tu = (Translator)this.locateMachine(Translator.class);
+        return CompletableFuture.supplyAsync(() -> tu.translate(t.transcribe(s), this), Simulation.GetExecutor());
     }
 
-    /** The machine m has been recently expressed, add it to the collection of machines in this individual */
+    /** Express the machines defined by all of the supplied structures, answering them in the same order. If there's more than one, and the
+     *  asyncExpression property is set, then they're expressed concurrently. Otherwise the cost of handing the work to another thread is
+     *  likely to outweigh that of expressing the machines. */
+    public List<Machine> expressMachines(List<Structure> structures) {
+        if (structures.size() <= 1 || !Simulation.GetValue("asyncExpression", false)) {
+            return structures.stream().map(s -> this.expressMachine(s)).collect(Collectors.toList());
+        }
+
+        List<CompletableFuture<Machine>> futures = structures.stream().map(s -> this.expressMachineAsync(s)).collect(Collectors.toList());
+        try {
+            return futures.stream().map(f -> f.join()).collect(Collectors.toList());
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException)e.getCause();
+            throw new MetaModelException("Cannot express machine", e.getCause());
+        }
+    }
+
+    /** Rather than expressing the receiver's essential machines now, express them with the supplied transcriber and translator when the
+     *  first machine is located in the receiver. This is done on whichever thread first needs a machine, holding only the receiver's lock. */
+    public synchronized void deferExpression(Transcriber transcriber, Translator translator) {
+        _pendingTranscriber = Optional.of(transcriber);
+        _pendingTranslator = Optional.of(translator);
+    }
+
+    /** If the expression of the receiver's essential machines has been deferred then express them now */
+    private synchronized void expressDeferredMachines() {
+        if (!_pendingTranscriber.isPresent()) return;
+
+        Transcriber t = _pendingTranscriber.get();
+        Translator tu = _pendingTranslator.get();
+        _pendingTranscriber = Optional.empty();
+        _pendingTranslator = Optional.empty();
+        _repository.stream()
+                   .filter(s -> s.getDomain().isEssential())
+                   .forEach(s -> this.addMachine(tu.translate(t.transcribe(s), this)));
+    }
+
+    /** The machine m has been recently expressed, add it to the collection of machines in this individual. Unless the machine is shared
+     *  with other individuals, the receiver becomes its environment. */
     public synchronized void addMachine(Machine m) {
-        _machines.add(m);
-        m.setEnvironment(this);
+        Set<Machine> machines = new HashSet<>(_machines);
+        machines.add(m);
+        _machines = Collections.unmodifiableSet(machines);
+        if (!(m instanceof SharedMachine)) m.setEnvironment(this);
     }
 
-    public synchronized Set<Structure> getRepository() {
+    /** Answer the receiver's machine template repository. This cannot be changed. */
+    public Set<Structure> getRepository() {
         return _repository;
     }
 
     /** Set the collection of structures that is this individuals machine template repository, really its genome. This is used during the process
      *  of replication. */
     public synchronized void setRepository(Set<Structure> repository) {
-        _repository = repository;
-
-        // Make sure that each structure knows what its environment is:
-        _repository.stream().forEach(s -> s.setEnvironment(this));
+        // Make sure that each structure knows what its environment is before the repository is published:
+        repository.stream().forEach(s -> s.setEnvironment(this));
+        _repository = Collections.unmodifiableSet(new HashSet<>(repository));
     }
 
     /** Add a new machine template to the receiver */
     public synchronized void addMachineTemplate(Structure template) {
-        _repository.add(template);
+        Set<Structure> repository = new HashSet<>(_repository);
+        repository.add(template);
+        _repository = Collections.unmodifiableSet(repository);
     }
 
-    public synchronized int getReplicationCount() {
-        return _replicationCount;
+    public int getReplicationCount() {
+        return _replicationCount.get();
     }
 
     public int getGeneration() {
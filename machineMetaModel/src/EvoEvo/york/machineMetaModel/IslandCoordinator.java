@@ -0,0 +1,186 @@
+package EvoEvo.york.machineMetaModel;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/** Coordinates a multi-process island model in which each island is hosted by an IslandWorker in a process of its own, so that each island
+ *  has its own heap, garbage collector and Simulation. The coordinator listens on a loopback socket to which the workers connect. At each
+ *  round it sends each worker the emigrants from the islands connected to it by the topology, lets all the islands search at once, and
+ *  collects their best individuals and emigrants, keeping track of the best individual found on any island. The genomes are just passed on,
+ *  so the coordinator never holds any island's population. */
+public class IslandCoordinator implements AutoCloseable {
+    private final static Logger _logger = Logger.getLogger("EvoEvo");
+
+    /** The time, in milliseconds, to wait for a worker to connect before checking that the worker processes are still running */
+    static final int ACCEPT_INTERVAL = 1000;
+
+    private final ServerSocket _serverSocket;
+
+    private final IslandSpace.Topology _topology;
+
+    /** The worker processes launched by the receiver */
+    private final List<Process> _processes = new ArrayList<>();
+
+    /** The streams to and from each worker, in order of the index of its island */
+    private DataInputStream[] _in = new DataInputStream[0];
+    private DataOutputStream[] _out = new DataOutputStream[0];
+    private Socket[] _sockets = new Socket[0];
+
+    /** The emigrants from each island at the last round, waiting to be sent on at the next */
+    private List<List<byte[]>> _emigrants = new ArrayList<>();
+
+    /** The fitness key and genome of the best individual found on any island */
+    private double _bestKey = Double.POSITIVE_INFINITY;
+    private Optional<byte[]> _bestGenome = Optional.empty();
+
+    public IslandCoordinator(IslandSpace.Topology topology) throws IOException {
+        _topology = topology;
+        _serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    }
+
+    /** Answer the loopback port on which the receiver listens for workers */
+    public int getPort() {
+        return _serverSocket.getLocalPort();
+    }
+
+    /** Launch a worker process for the island with the given index. The port and the index are added to the end of the supplied command. */
+    public void launch(List<String> command, int index) throws IOException {
+        List<String> c = new ArrayList<>(command);
+        c.add(String.valueOf(this.getPort()));
+        c.add(String.valueOf(index));
+        _processes.add(new ProcessBuilder(c).inheritIO().start());
+    }
+
+    /** Wait for the given number of workers to connect, each of which identifies the index of its island. Give up if any process the receiver
+     *  launched exits, or if the workers haven't all connected within the "workerStartTimeout" simulation value. */
+    public void connect(int numIslands) throws IOException {
+        _in = new DataInputStream[numIslands];
+        _out = new DataOutputStream[numIslands];
+        _sockets = new Socket[numIslands];
+        _emigrants = new ArrayList<>();
+        long deadline = System.currentTimeMillis() + Simulation.GetValue("workerStartTimeout", 60000);
+        _serverSocket.setSoTimeout(ACCEPT_INTERVAL);
+        for (int i = 0; i < numIslands; i++) {
+            Socket socket = this.accept(deadline);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            int index = in.readInt();
+            if (index < 0 || index >= numIslands || _sockets[index] != null) throw new MetaModelException("Unexpected island index: " + index);
+            _sockets[index] = socket;
+            _in[index] = in;
+            _out[index] = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            _emigrants.add(new ArrayList<>());
+        }
+    }
+
+    /** Accept the next worker's connection, checking while waiting that none of the processes the receiver launched has exited */
+    private Socket accept(long deadline) throws IOException {
+        while (true) {
+            try {
+                return _serverSocket.accept();
+            } catch (SocketTimeoutException e) {
+                for (Process p : _processes) {
+                    if (!p.isAlive()) throw new MetaModelException(String.format("Island worker exited with status %d before connecting", p.exitValue()));
+                }
+                if (System.currentTimeMillis() >= deadline) throw new MetaModelException("Timed out waiting for island workers to connect");
+            }
+        }
+    }
+
+    /** Run a round of migration and search on all of the islands. Answer the fitness key of the best individual found so far. */
+    public double search() throws IOException {
+        int numIslands = _sockets.length;
+
+        // Send each island its immigrants, all of which are sent before any island's answer is read, so that the islands search in parallel:
+        List<List<byte[]>> immigrants = new ArrayList<>();
+        for (int i = 0; i < numIslands; i++) immigrants.add(new ArrayList<>());
+        if (numIslands > 1) {
+            for (int i = 0; i < numIslands; i++) {
+                for (int destination : IslandSpace.Destinations(_topology, i, numIslands)) immigrants.get(destination).addAll(_emigrants.get(i));
+            }
+        }
+        for (int i = 0; i < numIslands; i++) {
+            _out[i].writeInt(immigrants.get(i).size());
+            for (byte[] genome : immigrants.get(i)) IslandWorker.WriteGenome(_out[i], genome);
+            _out[i].flush();
+        }
+
+        // Collect the best individual and the emigrants from each island:
+        for (int i = 0; i < numIslands; i++) {
+            double key = _in[i].readDouble();
+            byte[] best = IslandWorker.ReadGenome(_in[i]);
+            if (key < _bestKey) {
+                _bestKey = key;
+                _bestGenome = Optional.of(best);
+            }
+            int numEmigrants = _in[i].readInt();
+            List<byte[]> emigrants = new ArrayList<>(numEmigrants);
+            for (int e = 0; e < numEmigrants; e++) emigrants.add(IslandWorker.ReadGenome(_in[i]));
+            _emigrants.set(i, emigrants);
+        }
+        return _bestKey;
+    }
+
+    /** Answer the fitness key of the best individual found on any island */
+    public double getBestKey() {
+        return _bestKey;
+    }
+
+    /** Answer the best individual found on any island, read from its genome into a new individual made by the factory in the given
+     *  container */
+    public Optional<Individual> best(GenomeSerializer serializer, Function<Optional<Space>, Individual> factory, Optional<Space> container) {
+        return _bestGenome.map(g -> serializer.fromBytes(g, factory, container));
+    }
+
+    /** Ask all of the workers to stop, and wait for any processes the receiver launched to finish. A worker that can't be told to stop, as its
+     *  process has died, doesn't stop the others being told. */
+    @Override
+    public void close() throws IOException {
+        try {
+            for (int i = 0; i < _sockets.length; i++) {
+                if (_sockets[i] == null) continue;
+                try {
+                    _out[i].writeInt(-1);
+                    _out[i].flush();
+                } catch (IOException e) {
+                    _logger.log(Level.WARNING, String.format("Could not stop island worker %d", i), e);
+                } finally {
+                    this.closeSocket(i);
+                }
+            }
+        } finally {
+            _serverSocket.close();
+        }
+
+        for (Process p : _processes) {
+            try {
+                p.waitFor();
+            } catch (InterruptedException e) {
+                p.destroy();
+                Thread.currentThread().interrupt();
+            }
+        }
+        _logger.fine(String.format("{%d} Islands stopped, best key is %f", System.currentTimeMillis(), _bestKey));
+    }
+
+    /** Close the connection to the worker with the given index, which is only worth a warning if it fails as the worker is stopping anyway */
+    private void closeSocket(int index) {
+        try {
+            _sockets[index].close();
+        } catch (IOException e) {
+            _logger.log(Level.WARNING, String.format("Could not close the connection to island worker %d", index), e);
+        }
+    }
+}
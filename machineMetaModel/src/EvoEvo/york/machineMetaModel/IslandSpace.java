@@ -0,0 +1,237 @@
+package EvoEvo.york.machineMetaModel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/** A Searchable space made up of islands, each of which is itself a searchable space with its own population, such as an ElitistSpace or a
+ *  MicrobialGASpace. The islands search in parallel, each on its own thread and without reference to the others, and every so often some
+ *  individuals migrate between them. A migrant is a replicant of an individual on one island that takes the place of the worst individual
+ *  on another, so the population of each island stays the same. */
+public class IslandSpace extends Space implements SearchableSpace {
+    private final static Logger _logger = Logger.getLogger("EvoEvo");
+
+    /** The ways in which the islands may be connected for migration */
+    public enum Topology {
+        /** Migrants go from each island to the next, and from the last to the first */
+        RING,
+        /** Migrants go from each island to every other */
+        FULLY_CONNECTED,
+        /** Migrants go from each island to one other, chosen at random at each migration */
+        RANDOM
+    }
+
+    /** The ways in which migrants may be chosen from an island */
+    public enum Emigrants {
+        /** The fittest individuals emigrate */
+        BEST,
+        /** Individuals emigrate at random */
+        RANDOM
+    }
+
+    private Optional<Dataset> _dataset;
+
+    private final Topology _topology;
+
+    /** The number of searches each island makes between migrations */
+    private final int _migrationInterval;
+
+    /** The number of individuals that migrate from each island to each island it's connected to */
+    private final int _numMigrants;
+
+    private final Emigrants _emigrants;
+
+    /** Construct an island space, taking the migration policy from the "migrationTopology", "migrationInterval", "numMigrants" and
+     *  "emigrantSelection" simulation values */
+    public IslandSpace(Optional<Dataset> dataset) {
+        this(dataset,
+             Topology.valueOf(Simulation.GetValue("migrationTopology", Topology.RING.name()).toUpperCase()),
+             Simulation.GetValue("migrationInterval", 10),
+             Simulation.GetValue("numMigrants", 1),
+             Emigrants.valueOf(Simulation.GetValue("emigrantSelection", Emigrants.BEST.name()).toUpperCase()));
+    }
+
+    public IslandSpace(Optional<Dataset> dataset, Topology topology, int migrationInterval, int numMigrants, Emigrants emigrants) {
+        super(Optional.empty());
+        _dataset = dataset;
+        _topology = topology;
+        _migrationInterval = migrationInterval;
+        _numMigrants = numMigrants;
+        _emigrants = emigrants;
+    }
+
+    /** Add an island to the receiver. The island must be a searchable space. */
+    public void addIsland(Space island) {
+        if (!(island instanceof SearchableSpace)) throw new MetaModelException("An island must be a searchable space");
+        this.addSubspace(island);
+    }
+
+    /** Answer the receiver's islands */
+    public List<SearchableSpace> getIslands() {
+        return this.getSubspaces()
+                   .stream()
+                   .map(s -> (SearchableSpace)s)
+                   .collect(Collectors.toList());
+    }
+
+    /** Let each island search, in parallel, as many times as the migration interval and then let individuals migrate between the islands.
+     *  Answer the best individual found by any island. */
+    @Override
+    public Optional<Individual> search() {
+        List<SearchableSpace> islands = this.getIslands();
+        if (islands.isEmpty()) throw new MetaModelException("No islands to search");
+
+        List<CompletableFuture<Optional<Individual>>> searches = islands.stream()
+                                                                        .map(island -> CompletableFuture.supplyAsync(() -> this.searchIsland(island),
+                                                                                                                     Simulation.GetExecutor()))
+                                                                        .collect(Collectors.toList());
+        List<Individual> bests = searches.stream()
+                                         .map(CompletableFuture::join)
+                                         .filter(Optional::isPresent)
+                                         .map(Optional::get)
+                                         .collect(Collectors.toList());
+
+        this.migrate(islands);
+
+        return bests.stream().min(Individual::CompareFitness);
+    }
+
+    /** Let the island search as many times as the migration interval, answering the result of the last search */
+    private Optional<Individual> searchIsland(SearchableSpace island) {
+        Optional<Individual> result = Optional.empty();
+        for (int s = 0; s < _migrationInterval; s++) {
+            result = island.search();
+        }
+        return result;
+    }
+
+    /** Let individuals migrate between the islands. The emigrants from every island are chosen before any of them arrive anywhere, so that
+     *  no individual migrates twice. */
+    private void migrate(List<SearchableSpace> islands) {
+        if (islands.size() < 2) return;
+
+        List<List<Individual>> emigrants = islands.stream()
+                                                  .map(island -> ChooseEmigrants((Space)island, _numMigrants, _emigrants))
+                                                  .collect(Collectors.toList());
+        for (int i = 0; i < islands.size(); i++) {
+            for (int destination : Destinations(_topology, i, islands.size())) {
+                for (Individual emigrant : emigrants.get(i)) {
+                    this.immigrate(emigrant, (Space)islands.get(destination));
+                }
+            }
+        }
+    }
+
+    /** Answer the indices of the islands that migrants from the given island go to, when there are numIslands connected by the topology */
+    static List<Integer> Destinations(Topology topology, int source, int numIslands) {
+        List<Integer> result = new ArrayList<>();
+        switch (topology) {
+            case RING:
+                result.add((source + 1) % numIslands);
+                break;
+            case FULLY_CONNECTED:
+                for (int i = 0; i < numIslands; i++) {
+                    if (i != source) result.add(i);
+                }
+                break;
+            case RANDOM:
+                int destination = ThreadLocalRandom.current().nextInt(numIslands - 1);
+                result.add(destination >= source ? destination + 1 : destination);
+                break;
+        }
+        return result;
+    }
+
+    /** Answer the individuals that will emigrate from the given island. The best are chosen from those that have been evaluated, if any. */
+    static List<Individual> ChooseEmigrants(Space island, int numMigrants, Emigrants emigrants) {
+        List<Individual> individuals = island.getSubspaces()
+                                             .stream()
+                                             .map(s -> (Individual)s)
+                                             .collect(Collectors.toList());
+        if (emigrants == Emigrants.BEST) {
+            // The best of those already evaluated, so that no more individuals are evaluated just to choose migrants:
+            List<Individual> evaluated = individuals.stream()
+                                                    .filter(Individual::isEvaluated)
+                                                    .collect(Collectors.toList());
+            return (evaluated.isEmpty() ? individuals : evaluated).stream()
+                                                                  .sorted(Individual::CompareFitness)
+                                                                  .limit(numMigrants)
+                                                                  .collect(Collectors.toList());
+        } else {
+            Collections.shuffle(individuals, ThreadLocalRandom.current());
+            return individuals.subList(0, Math.min(numMigrants, individuals.size()));
+        }
+    }
+
+    /** Replicate the emigrant and move the replicant to the destination island, where it replaces the worst of the individuals that have been
+     *  evaluated, or one at random if none have */
+    private void immigrate(Individual emigrant, Space destination) {
+        Individual replaced = WorstOf(destination);
+        Individual migrant = emigrant.replicate();
+        destination.addSubspace(migrant);
+        destination.removeSubspace(replaced);
+
+        if (_logger.isLoggable(Level.FINE)) {
+            _logger.fine(String.format("{%d} Migrated %s as %s, replacing %s", System.currentTimeMillis(), emigrant, migrant, replaced));
+        }
+    }
+
+    /** Answer the individual on the island that an immigrant replaces: the worst of those that have been evaluated, or one at random if none
+     *  have */
+    static Individual WorstOf(Space island) {
+        List<Space> individuals = island.getSubspaces();
+        Optional<Space> worst = individuals.stream()
+                                           .filter(s -> ((Individual)s).isEvaluated())
+                                           .max(Comparator.comparingDouble(s -> ((Individual)s).fitnessKey()));
+        Random r = ThreadLocalRandom.current();
+        return (Individual)worst.orElseGet(() -> individuals.get(r.nextInt(individuals.size())));
+    }
+
+    @Override
+    public void replicateInto(Site target, Individual parent) {
+
+    }
+
+    /** Answer the best of the individuals on all of the islands */
+    @Override
+    public Optional<Individual> best() {
+        return this.getIslands()
+                   .stream()
+                   .map(SearchableSpace::best)
+                   .filter(Optional::isPresent)
+                   .map(Optional::get)
+                   .min(Individual::CompareFitness);
+    }
+
+    @Override
+    public void replicationRequest(Site source, Site destination) {
+
+    }
+
+    @Override
+    public Optional<Dataset> getDataset() {
+        return _dataset;
+    }
+
+    /** Answer the number of individuals on all of the islands */
+    @Override
+    public long numIndividuals() {
+        return this.getIslands()
+                   .stream()
+                   .mapToLong(SearchableSpace::numIndividuals)
+                   .sum();
+    }
+
+    @Override
+    public void run() {
+
+    }
+}
@@ -0,0 +1,97 @@
+package EvoEvo.york.machineMetaModel;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/** One island of a multi-process island model, hosted in a process of its own and connected to an IslandCoordinator by a loopback socket.
+ *  At each round the coordinator sends the worker its immigrants, which replace the worst of the island's individuals; the island then
+ *  searches as many times as the migration interval and the worker answers the fitness key and genome of its best individual and the
+ *  genomes of its emigrants. Genomes are exchanged as written by a GenomeSerializer, each preceded by its length. */
+public class IslandWorker {
+    private final static Logger _logger = Logger.getLogger("EvoEvo");
+
+    private final SearchableSpace _island;
+
+    private final GenomeSerializer _serializer;
+
+    /** Makes a new, empty, individual of the right sort in a given container */
+    private final Function<Optional<Space>, Individual> _factory;
+
+    /** The number of searches the island makes between migrations */
+    private final int _migrationInterval;
+
+    /** The number of individuals that emigrate from the island at each migration */
+    private final int _numMigrants;
+
+    private final IslandSpace.Emigrants _emigrants;
+
+    public IslandWorker(SearchableSpace island, GenomeSerializer serializer, Function<Optional<Space>, Individual> factory,
+                        int migrationInterval, int numMigrants, IslandSpace.Emigrants emigrants) {
+        _island = island;
+        _serializer = serializer;
+        _factory = factory;
+        _migrationInterval = migrationInterval;
+        _numMigrants = numMigrants;
+        _emigrants = emigrants;
+    }
+
+    /** Connect to the coordinator listening on the given loopback port, identify the receiver as the island with the given index, and serve
+     *  rounds of migration and search until the coordinator asks the receiver to stop. */
+    public void serve(int port, int index) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeInt(index);
+            out.flush();
+
+            int numImmigrants;
+            while ((numImmigrants = in.readInt()) >= 0) {
+                for (int i = 0; i < numImmigrants; i++) this.immigrate(in);
+
+                Optional<Individual> best = Optional.empty();
+                for (int s = 0; s < _migrationInterval; s++) best = _island.search();
+                Individual b = best.orElseThrow(() -> new MetaModelException("Island has no best individual"));
+
+                out.writeDouble(b.fitnessKey());
+                WriteGenome(out, _serializer.toBytes(b));
+                List<Individual> emigrants = IslandSpace.ChooseEmigrants((Space)_island, _numMigrants, _emigrants);
+                out.writeInt(emigrants.size());
+                for (Individual e : emigrants) WriteGenome(out, _serializer.toBytes(e));
+                out.flush();
+            }
+        }
+        _logger.fine(String.format("{%d} Island %d stopped", System.currentTimeMillis(), index));
+    }
+
+    /** Read an immigrant and put it on the island in place of the worst individual there */
+    private void immigrate(DataInputStream in) throws IOException {
+        Space island = (Space)_island;
+        Individual replaced = IslandSpace.WorstOf(island);
+        _serializer.fromBytes(ReadGenome(in), _factory, Optional.of(island));
+        island.removeSubspace(replaced);
+    }
+
+    /** Write a genome, as answered by GenomeSerializer.toBytes(), preceded by its length so that it can be passed on without being read */
+    static void WriteGenome(DataOutput out, byte[] genome) throws IOException {
+        out.writeInt(genome.length);
+        out.write(genome);
+    }
+
+    /** Read a genome written by WriteGenome() */
+    static byte[] ReadGenome(DataInput in) throws IOException {
+        byte[] result = new byte[in.readInt()];
+        in.readFully(result);
+        return result;
+    }
+}
@@ -23,13 +23,18 @@ public class Kloner extends Machine {
      *  @return this, although  that won't be very interesting. */
     @Override
     public Structure doIt() {
+        _newRepository = Optional.of(this.mutateRepository());
+        return this;
+    }
+
+    /** Answer a potentially inaccurate copy of the machine template repository of the receiver's environment. Unlike doIt() this leaves
+     *  the receiver unchanged, so may be used by several threads at once. */
+    public Set<Structure> mutateRepository() {
         Set<Structure> repository = ((Individual)_environment).getRepository();
         Set<Structure> newRepository = new HashSet<>(repository.size());
         repository.stream()
                   .forEach(s -> newRepository.add(s.getDomain().mutate(s, this)));
-
-        _newRepository = Optional.of(newRepository);
-        return this;
+        return newRepository;
     }
 
     public Set<Structure> getNewRepository() {
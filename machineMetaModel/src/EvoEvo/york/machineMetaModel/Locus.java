@@ -0,0 +1,42 @@
+package EvoEvo.york.machineMetaModel;
+
+/** A locus is a contiguous region of the code of a structure, from a begin position up to, but not including, an end position. Each locus
+ *  is a unit of transcription: a structure whose domain has promoters has a locus starting at each promoter and running up to the next. */
+public class Locus {
+    private final int _begin;
+    private final int _end;
+
+    public Locus(int begin, int end) {
+        if (begin < 0 || end < begin) throw new MetaModelException("Invalid locus: " + begin + ".." + end);
+        _begin = begin;
+        _end = end;
+    }
+
+    public int getBegin() {
+        return _begin;
+    }
+
+    public int getEnd() {
+        return _end;
+    }
+
+    /** Answer the number of pearls in the locus */
+    public int length() {
+        return _end - _begin;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof Locus && ((Locus)obj)._begin == _begin && ((Locus)obj)._end == _end;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * _begin + _end;
+    }
+
+    @Override
+    public String toString() {
+        return _begin + ".." + _end;
+    }
+}
@@ -2,6 +2,7 @@ package EvoEvo.york.machineMetaModel;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Optional;
 import java.util.logging.*;
 
 /** A special sort of Structure that adds in some behaviour to a structure. It's to be expected that there will be many
@@ -29,6 +30,12 @@ public abstract class Machine extends Structure {
         _Handler.flush();
     }
 
+    /** The compiled form of the receiver's code, if its domain compiles code, against which the receiver executes */
+    private Optional<Object> _phenotype = Optional.empty();
+
+    /** True once the receiver's code has been compiled */
+    private volatile boolean _compiled = false;
+
     /** Construct a new machine with the given code, drawn from the given domain and in the given environment.
      * @param environment the space, likely  an individual, that contains the new object
      * @param code the code for the new machine's structure
@@ -37,6 +44,30 @@ public abstract class Machine extends Structure {
         super(environment, code, domain);
     }
 
+    /** Compile the receiver's code, using its domain, into the form against which it executes */
+    public void compile() {
+        _phenotype = _domain.compile(_code);
+        _compiled = true;
+    }
+
+    public boolean isCompiled() {
+        return _compiled;
+    }
+
+    /** Answer the compiled form of the receiver's code, if its domain compiles code. Machines are compiled when they're expressed, but one
+     *  that was constructed some other way is compiled now. */
+    public Optional<Object> getPhenotype() {
+        if (!_compiled) this.compile();
+        return _phenotype;
+    }
+
+    /** Changing the receiver's code means that it must be compiled again */
+    @Override
+    public void setCode(List<Pearl> code) {
+        super.setCode(code);
+        _compiled = false;
+    }
+
     /** For simplicity's sake, let's assume that machine enactment is done by calling a single operation on all machines.
      *  @return A new structure that is the result, in some way, of the operation, or this if no new structure is produced.  */
     public abstract Structure doIt();
@@ -1,7 +1,11 @@
 package EvoEvo.york.machineMetaModel;
 
 import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -11,6 +15,9 @@ public class MicrobialGASpace extends Space implements SearchableSpace {
 
     private Optional<Dataset> _dataset;
 
+    /** True while search() is running tournaments in parallel */
+    private volatile boolean _breeding = false;
+
     public MicrobialGASpace(Optional<Dataset> dataset) {
         super(Optional.empty());
         _dataset = dataset;
@@ -29,15 +36,18 @@ public class MicrobialGASpace extends Space implements SearchableSpace {
             i2 = (Individual)this.getSubspace(ThreadLocalRandom.current().nextInt(this.numSubspaces()));
         } while (i1.equals(i2));
 
-        // Work out which is the best and which the worst of the two:
-        Individual best = i1.compareTo(i2) < 0 ? i1 : i2;
+        Individual best = this.winner(i1, i2);
         Individual worst = best.equals(i1) ? i2 : i1;
 
         // Remove the worst from the container and replicate the best:
-        int worstPos = this.findPosition(worst);
-        int bestPos = this.findPosition(best);
-        String wDesc = String.format("[%d:%d]", worstPos, worstPos);
-        String bDesc = String.format("[%d:%d]", bestPos, bestPos);
+        String wDesc = "";
+        String bDesc = "";
+        if (_logger.isLoggable(Level.FINE)) {
+            int worstPos = this.findPosition(worst);
+            int bestPos = this.findPosition(best);
+            wDesc = String.format("[%d:%d]", worstPos, worstPos);
+            bDesc = String.format("[%d:%d]", bestPos, bestPos);
+        }
         this.removeSubspace(worst);
         Space replicant = best.replicate();
         if (_logger.isLoggable(Level.FINE)) {
@@ -51,6 +61,79 @@ public class MicrobialGASpace extends Space implements SearchableSpace {
         return this.best();
     }
 
+    /** Run the given number of tournaments concurrently, on as many workers as the "mgaWorkers" simulation value, by default the number of
+     *  processors, but no more than half the population as each tournament claims two individuals. The population is held in an array of
+     *  slots for the duration: each tournament claims the slots of its two individuals, so that no two tournaments ever involve the same
+     *  individual, and the winner's child overwrites the loser in its slot. The slots then replace the receiver's subspaces in one step.
+     *  Answer the best individual. */
+    public Optional<Individual> search(int numTournaments) {
+        Individual[] slots = this.getSubspaces().toArray(new Individual[0]);
+        if (slots.length < 2) throw new MetaModelException("Microbial GA needs at least two individuals");
+
+        AtomicIntegerArray claimed = new AtomicIntegerArray(slots.length);
+        AtomicInteger remaining = new AtomicInteger(numTournaments);
+        int numWorkers = Math.min(Simulation.GetValue("mgaWorkers", Runtime.getRuntime().availableProcessors()), Math.max(1, slots.length / 2));
+        CompletableFuture<?>[] workers = new CompletableFuture<?>[numWorkers];
+
+        _breeding = true;
+        try {
+            for (int w = 0; w < numWorkers; w++) {
+                workers[w] = CompletableFuture.runAsync(() -> this.runTournaments(slots, claimed, remaining), Simulation.GetExecutor());
+            }
+            CompletableFuture.allOf(workers).join();
+        } finally {
+            _breeding = false;
+        }
+        this.replaceSubspaces(slots);
+
+        return this.best();
+    }
+
+    /** Keep running tournaments between pairs of individuals in the slots until there are none remaining. A pair is claimed by setting the
+     *  claim of each of its slots, and if the second can't be claimed the first is released and another pair chosen, so a worker never
+     *  waits for another. */
+    private void runTournaments(Individual[] slots, AtomicIntegerArray claimed, AtomicInteger remaining) {
+        Random r = ThreadLocalRandom.current();
+        while (remaining.getAndDecrement() > 0) {
+            int s1;
+            int s2;
+            do {
+                s1 = r.nextInt(slots.length);
+                if (!claimed.compareAndSet(s1, 0, 1)) continue;
+                s2 = r.nextInt(slots.length);
+                if (s2 != s1 && claimed.compareAndSet(s2, 0, 1)) break;
+                claimed.set(s1, 0);
+            } while (true);
+
+            try {
+                Individual best = this.winner(slots[s1], slots[s2]);
+                int worstSlot = best.equals(slots[s1]) ? s2 : s1;
+                slots[worstSlot] = best.replicate();
+            } finally {
+                claimed.set(s1, 0);
+                claimed.set(s2, 0);
+            }
+        }
+    }
+
+    /** Work out which is the best of the two individuals. The second need only be evaluated until it's clear whether or not it beats the
+     *  first, which is evaluated in full unless only the second has been evaluated already. */
+    private Individual winner(Individual i1, Individual i2) {
+        if (i2.isEvaluated() && !i1.isEvaluated()) {
+            Individual i = i1;
+            i1 = i2;
+            i2 = i;
+        }
+        return i2.fitnessKey(i1.fitnessKey()) < i1.fitnessKey() ? i2 : i1;
+    }
+
+    /** While tournaments are run in parallel the children are put in their slots by search(), so are not added to the receiver as they're
+     *  cloned */
+    @Override
+    protected void acceptClone(Space clone) {
+        if (!_breeding) super.acceptClone(clone);
+    }
+
     @Override
     public void replicateInto(Site target, Individual parent) {
 
@@ -61,11 +144,15 @@ public class MicrobialGASpace extends Space implements SearchableSpace {
         return _dataset;
     }
 
+    /** Answer the best of the individuals that have been evaluated, so that new offspring are left to be evaluated, perhaps only in part,
+     *  in a later tournament. If none has been evaluated then all of them are. */
     @Override
     public Optional<Individual> best() {
         Optional<Space> best = this.getSubspaces()
                                         .stream()
-                                        .min((j1, j2) -> ((Individual)j1).compareTo((Individual)j2));
+                                        .filter(s -> ((Individual)s).isEvaluated())
+                                        .min(Individual::CompareFitness);
+        if (!best.isPresent()) best = this.getSubspaces().stream().min(Individual::CompareFitness);
         return Optional.of((Individual)best.get());
     }
 
@@ -0,0 +1,501 @@
+package EvoEvo.york.machineMetaModel;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/** The code of a structure held as primitive values rather than as a list of individual Pearl objects. The state of each pearl is packed,
+ *  by the codec of the pearls' domain, into a fixed number of doubles and whether or not the pearl is coding is held alongside.
+ *
+ *  The packed values are held as a rope: a sequence of segments each of which is a run of pearls in a primitive array. Once a segment is
+ *  shared between two sequences it never changes, so copying a PackedCode just copies the list of segments and the copy shares all of the
+ *  receiver's values. Changing a pearl copies only the segment that holds it and copying a range of pearls from another sequence shares that
+ *  sequence's segments, so the cost of mutating a copy is proportional to the number of mutations rather than to the length of the code.
+ *
+ *  The List interface is retained as a view over the packed values: get() answers a newly decoded Pearl each time it is called, so changes
+ *  made to that Pearl are only retained if it is put back with set(). */
+public class PackedCode extends AbstractList<Pearl> implements RandomAccess {
+    /** The number of pearls in a newly built segment. Segments are split when they grow to twice this size. */
+    static final int SEGMENT_SIZE = 64;
+
+    /** A run of packed pearls: length pearls starting at offset in the values and coding arrays. A segment is only ever changed in place by
+     *  the sequence that built it and then only while that sequence owns it. */
+    static final class Segment {
+        final double[] _values;
+        final boolean[] _coding;
+        final int _offset;
+        int _length;
+
+        /** The positions, relative to offset, of the coding pearls of the segment. Worked out when first needed and then shared by all
+         *  the sequences that share the segment. */
+        volatile int[] _codingPositions;
+
+        /** The positions, relative to offset, of the promoter pearls of the segment, worked out and shared in the same way */
+        volatile int[] _promoterPositions;
+
+        Segment(double[] values, boolean[] coding, int offset, int length) {
+            _values = values;
+            _coding = coding;
+            _offset = offset;
+            _length = length;
+        }
+
+        /** Answer a new segment holding a private copy of the receiver's pearls, with room for extra more */
+        Segment copy(int width, int extra) {
+            Segment result = new Segment(new double[(_length + extra) * width], new boolean[_length + extra], 0, _length);
+            System.arraycopy(_values, _offset * width, result._values, 0, _length * width);
+            System.arraycopy(_coding, _offset, result._coding, 0, _length);
+            return result;
+        }
+
+        /** Answer the positions, relative to offset, of the coding pearls of the receiver */
+        int[] codingPositions() {
+            int[] result = _codingPositions;
+            if (result == null) {
+                int count = 0;
+                for (int i = 0; i < _length; i++) {
+                    if (_coding[_offset + i]) count++;
+                }
+                result = new int[count];
+                count = 0;
+                for (int i = 0; i < _length; i++) {
+                    if (_coding[_offset + i]) result[count++] = i;
+                }
+                _codingPositions = result;
+            }
+            return result;
+        }
+
+        /** Answer the positions, relative to offset, of the pearls of the receiver that the supplied domain says are promoters */
+        int[] promoterPositions(Domain domain, Domain.Codec codec, int width) {
+            int[] result = _promoterPositions;
+            if (result == null) {
+                int[] found = new int[_length];
+                int count = 0;
+                for (int i = 0; i < _length; i++) {
+                    if (domain.isPromoter(codec.decode(_values, (_offset + i) * width))) found[count++] = i;
+                }
+                result = Arrays.copyOf(found, count);
+                _promoterPositions = result;
+            }
+            return result;
+        }
+
+        /** Forget anything worked out about the receiver's pearls as one of them has been changed in place */
+        void changed() {
+            _codingPositions = null;
+            _promoterPositions = null;
+        }
+
+        /** Answer true if there's room to add another pearl to the end of the receiver's arrays */
+        boolean hasRoom() {
+            return _offset + _length < _coding.length;
+        }
+    }
+
+    /** The domain from which all of the pearls are drawn */
+    protected Domain _domain;
+
+    /** The codec, supplied by the domain, that packs and unpacks individual pearls */
+    protected Domain.Codec _codec;
+
+    /** The number of values used to hold each pearl */
+    protected int _width;
+
+    /** The segments that together hold the pearls of the sequence, in order */
+    protected List<Segment> _segments;
+
+    /** True if the last segment was built by the receiver and has not been shared, so that it can be changed in place */
+    protected boolean _ownsLast;
+
+    /** The position in the sequence of the first pearl of each segment. Rebuilt, when next needed, after the segments change. */
+    private volatile int[] _starts;
+
+    /** The number of pearls in the sequence */
+    protected int _size;
+
+    /** Construct an empty sequence of pearls drawn from the supplied domain, which must have a codec */
+    public PackedCode(Domain domain, int capacity) {
+        _domain = domain;
+        _codec = domain.getCodec().orElseThrow(() -> new MetaModelException("Domain has no codec: " + domain));
+        _width = _codec.width();
+        _segments = new ArrayList<>(Math.max(capacity / SEGMENT_SIZE, 1));
+        _ownsLast = false;
+        _starts = null;
+        _size = 0;
+    }
+
+    /** Answer a packed copy of the supplied pearls, each of which must be from the supplied domain */
+    public static PackedCode Pack(Domain domain, List<Pearl> code) {
+        PackedCode result = new PackedCode(domain, code.size());
+        code.forEach(p -> result.add(p));
+        return result;
+    }
+
+    public Domain getDomain() {
+        return _domain;
+    }
+
+    @Override
+    public int size() {
+        return _size;
+    }
+
+    /** Answer the number of segments that currently make up the receiver */
+    public int numSegments() {
+        return _segments.size();
+    }
+
+    /** Answer a newly decoded Pearl at the given position */
+    @Override
+    public Pearl get(int index) {
+        this.checkIndex(index);
+        int[] starts = this.starts();
+        int s = SegmentIndex(starts, index);
+        Segment segment = _segments.get(s);
+        int position = segment._offset + index - starts[s];
+        Pearl result = _codec.decode(segment._values, position * _width);
+        result.setCoding(segment._coding[position]);
+        return result;
+    }
+
+    /** Replace the pearl at the given position with the supplied one, answering the pearl that was previously there. Only the segment
+     *  holding the pearl is copied. */
+    @Override
+    public Pearl set(int index, Pearl p) {
+        Pearl previous = this.get(index);
+        int[] starts = this.starts();
+        int s = SegmentIndex(starts, index);
+        Segment segment = this.ownedSegment(s, 0);
+        this.encode(p, segment, segment._offset + index - starts[s]);
+        return previous;
+    }
+
+    @Override
+    public void add(int index, Pearl p) {
+        if (index < 0 || index > _size) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + _size);
+        if (index == _size) {
+            this.append(p);
+        } else {
+            int[] starts = this.starts();
+            int s = SegmentIndex(starts, index);
+            int position = index - starts[s];
+            Segment segment = this.ownedSegment(s, 1);
+            int from = segment._offset + position;
+            System.arraycopy(segment._values, from * _width, segment._values, (from + 1) * _width, (segment._length - position) * _width);
+            System.arraycopy(segment._coding, from, segment._coding, from + 1, segment._length - position);
+            segment._length++;
+            this.encode(p, segment, from);
+            _size++;
+            if (segment._length >= SEGMENT_SIZE * 2) this.split(s);
+            _starts = null;
+        }
+        modCount++;
+    }
+
+    @Override
+    public Pearl remove(int index) {
+        Pearl result = this.get(index);
+        int[] starts = this.starts();
+        int s = SegmentIndex(starts, index);
+        int position = index - starts[s];
+        Segment segment = _segments.get(s);
+        if (segment._length == 1) {
+            _segments.remove(s);
+            if (s == _segments.size()) _ownsLast = false;
+        } else {
+            segment = this.ownedSegment(s, 0);
+            int from = segment._offset + position;
+            System.arraycopy(segment._values, (from + 1) * _width, segment._values, from * _width, (segment._length - position - 1) * _width);
+            System.arraycopy(segment._coding, from + 1, segment._coding, from, segment._length - position - 1);
+            segment._length--;
+            segment.changed();
+        }
+        _size--;
+        _starts = null;
+        modCount++;
+        return result;
+    }
+
+    /** Answer true if the pearl at the given position is coding. This does not need the pearl to be decoded. */
+    public boolean isCoding(int index) {
+        this.checkIndex(index);
+        int[] starts = this.starts();
+        int s = SegmentIndex(starts, index);
+        Segment segment = _segments.get(s);
+        return segment._coding[segment._offset + index - starts[s]];
+    }
+
+    /** Answer one of the packed values of the pearl at the given position. This does not need the pearl to be decoded. */
+    public double getValue(int index, int field) {
+        this.checkIndex(index);
+        int[] starts = this.starts();
+        int s = SegmentIndex(starts, index);
+        Segment segment = _segments.get(s);
+        return segment._values[((segment._offset + index - starts[s]) * _width) + field];
+    }
+
+    /** Answer an exact copy of the receiver. The copy shares all of the receiver's segments, so this costs no more than copying the list
+     *  of segments, however long the sequence. */
+    public PackedCode copy() {
+        PackedCode result = new PackedCode(_domain, 0);
+        result._segments.addAll(_segments);
+        result._size = _size;
+        result._starts = _starts;
+        _ownsLast = false;
+        return result;
+    }
+
+    /** Append the pearls of the source from position start up to, but not including, position finish to the receiver. Both must be drawn
+     *  from the same domain. The appended pearls share the source's segments rather than being copied. */
+    public void addRange(PackedCode source, int start, int finish) {
+        if (source._domain != _domain) throw new MetaModelException("Wrong Domain");
+        if (start < 0 || finish > source._size || start > finish) throw new IndexOutOfBoundsException("Range: " + start + ".." + finish + ", Size: " + source._size);
+        if (start == finish) return;
+
+        int[] sourceStarts = source.starts();
+        int s = SegmentIndex(sourceStarts, start);
+        int position = start;
+        while (position < finish) {
+            Segment segment = source._segments.get(s);
+            int from = position - sourceStarts[s];
+            int length = Math.min(segment._length - from, finish - position);
+            _segments.add(new Segment(segment._values, segment._coding, segment._offset + from, length));
+            position += length;
+            s++;
+        }
+
+        // The source's last segment may now be shared, as is the receiver's:
+        if (s == source._segments.size()) source._ownsLast = false;
+        _ownsLast = false;
+        _size += finish - start;
+        _starts = null;
+        modCount++;
+        this.compactIfFragmented();
+    }
+
+    /** Answer a view of only the coding pearls of the receiver, in order. The view is of a copy of the receiver, so it is not affected by
+     *  later changes to the receiver. Building the view costs time in proportion to the number of coding pearls and segments, not to the
+     *  length of the receiver, as the coding positions of each segment are remembered by the segment. */
+    public CodingView codingView() {
+        return this.codingView(0, _size);
+    }
+
+    /** Answer a view of only the coding pearls of the receiver from position begin up to, but not including, position end. Only the
+     *  segments that overlap the range are looked at. */
+    public CodingView codingView(int begin, int end) {
+        if (begin < 0 || end > _size || begin > end) throw new IndexOutOfBoundsException("Range: " + begin + ".." + end + ", Size: " + _size);
+
+        PackedCode source = this.copy();
+        int[] positions = new int[end - begin];
+        int count = 0;
+        if (begin < end) {
+            int[] starts = this.starts();
+            for (int s = SegmentIndex(starts, begin); s < starts.length && starts[s] < end; s++) {
+                for (int p : _segments.get(s).codingPositions()) {
+                    int position = starts[s] + p;
+                    if (position >= end) break;
+                    if (position >= begin) positions[count++] = position;
+                }
+            }
+        }
+        return new CodingView(source, Arrays.copyOf(positions, count));
+    }
+
+    /** Answer the positions of the pearls of the receiver that its domain says are promoters. Each segment remembers its own promoter
+     *  positions, so only segments that are new since the receiver was copied from its parent need to be looked at. */
+    public int[] promoterPositions() {
+        int[] starts = this.starts();
+        int[] result = new int[0];
+        int count = 0;
+        for (int s = 0; s < starts.length; s++) {
+            int[] found = _segments.get(s).promoterPositions(_domain, _codec, _width);
+            if (found.length == 0) continue;
+            if (count + found.length > result.length) result = Arrays.copyOf(result, Math.max(result.length * 2, count + found.length));
+            for (int p : found) result[count++] = starts[s] + p;
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /** Answer the packed values of all of the pearls of the receiver, in order, width values for each pearl */
+    public double[] values() {
+        double[] result = new double[_size * _width];
+        int next = 0;
+        for (Segment segment : _segments) {
+            System.arraycopy(segment._values, segment._offset * _width, result, next, segment._length * _width);
+            next += segment._length * _width;
+        }
+        return result;
+    }
+
+    /** Answer the packed values of just the coding pearls of the receiver, in order, width values for each pearl */
+    public double[] codingValues() {
+        int count = 0;
+        for (Segment segment : _segments) count += segment.codingPositions().length;
+
+        double[] result = new double[count * _width];
+        int next = 0;
+        for (Segment segment : _segments) {
+            for (int p : segment.codingPositions()) {
+                System.arraycopy(segment._values, (segment._offset + p) * _width, result, next, _width);
+                next += _width;
+            }
+        }
+        return result;
+    }
+
+    /** Answer the packed values of the pearls at the supplied positions of the receiver, in order */
+    double[] values(int[] positions) {
+        double[] result = new double[positions.length * _width];
+        if (positions.length == 0) return result;
+
+        int[] starts = this.starts();
+        int s = 0;
+        for (int i = 0; i < positions.length; i++) {
+            // The positions are usually ascending, so the segment holding each is usually the same as, or follows, the last one:
+            if (positions[i] < starts[s] || (s + 1 < starts.length && positions[i] >= starts[s + 1])) s = SegmentIndex(starts, positions[i]);
+            Segment segment = _segments.get(s);
+            System.arraycopy(segment._values, (segment._offset + positions[i] - starts[s]) * _width, result, i * _width, _width);
+        }
+        return result;
+    }
+
+    /** Answer a new sequence containing only the coding pearls of the receiver, in order */
+    public PackedCode codingOnly() {
+        PackedCode result = new PackedCode(_domain, _size);
+        for (Segment segment : _segments) {
+            for (int i = segment._offset; i < segment._offset + segment._length; i++) {
+                if (segment._coding[i]) result.appendPacked(segment._values, i * _width, true);
+            }
+        }
+        return result;
+    }
+
+    /** Add the supplied pearl to the end of the receiver, in place if the receiver owns its last segment and there's room in it */
+    private void append(Pearl p) {
+        Segment last = this.lastSegmentWithRoom();
+        this.encode(p, last, last._offset + last._length);
+        last._length++;
+        _size++;
+    }
+
+    /** Add a pearl, already packed, to the end of the receiver */
+    private void appendPacked(double[] values, int offset, boolean coding) {
+        Segment last = this.lastSegmentWithRoom();
+        int position = last._offset + last._length;
+        System.arraycopy(values, offset, last._values, position * _width, _width);
+        last._coding[position] = coding;
+        last.changed();
+        last._length++;
+        _size++;
+    }
+
+    private Segment lastSegmentWithRoom() {
+        if (_ownsLast && _segments.get(_segments.size() - 1).hasRoom()) return _segments.get(_segments.size() - 1);
+
+        Segment result = new Segment(new double[SEGMENT_SIZE * _width], new boolean[SEGMENT_SIZE], 0, 0);
+        _segments.add(result);
+        _ownsLast = true;
+        _starts = null;
+        return result;
+    }
+
+    /** Answer the segment at position s, first replacing it by a private copy, with room for extra pearls, unless the receiver owns it and
+     *  it has the room already. Only the receiver's last segment is ever owned. */
+    private Segment ownedSegment(int s, int extra) {
+        Segment segment = _segments.get(s);
+        boolean owned = _ownsLast && s == _segments.size() - 1;
+        if (owned && (extra == 0 || segment.hasRoom())) return segment;
+
+        Segment result = segment.copy(_width, Math.max(extra, SEGMENT_SIZE - segment._length));
+        _segments.set(s, result);
+        if (s == _segments.size() - 1) _ownsLast = true;
+        return result;
+    }
+
+    /** Split the segment at position s into two halves */
+    private void split(int s) {
+        Segment segment = _segments.get(s);
+        int half = segment._length / 2;
+        Segment second = new Segment(segment._values, segment._coding, segment._offset + half, segment._length - half);
+        Segment first = new Segment(segment._values, segment._coding, segment._offset, half);
+        _segments.set(s, first);
+        _segments.add(s + 1, second);
+
+        // The halves share an array, so neither can now be changed in place:
+        if (s + 1 == _segments.size() - 1) _ownsLast = false;
+        _starts = null;
+    }
+
+    /** Ranges copied from other sequences can leave the receiver as many small segments. If there are too many, merge adjacent small
+     *  segments into new ones of about SEGMENT_SIZE pearls. */
+    private void compactIfFragmented() {
+        if (_segments.size() <= (_size / (SEGMENT_SIZE / 4)) + 4) return;
+
+        List<Segment> compacted = new ArrayList<>(_size / SEGMENT_SIZE + 1);
+        int i = 0;
+        while (i < _segments.size()) {
+            Segment segment = _segments.get(i);
+            if (segment._length >= SEGMENT_SIZE / 2) {
+                compacted.add(segment);
+                i++;
+            } else {
+                // Gather a run of small segments into a single new one:
+                int length = 0;
+                int j = i;
+                while (j < _segments.size() && _segments.get(j)._length < SEGMENT_SIZE / 2 && length + _segments.get(j)._length <= SEGMENT_SIZE) {
+                    length += _segments.get(j++)._length;
+                }
+                Segment merged = new Segment(new double[length * _width], new boolean[length], 0, length);
+                int position = 0;
+                for (int k = i; k < j; k++) {
+                    Segment small = _segments.get(k);
+                    System.arraycopy(small._values, small._offset * _width, merged._values, position * _width, small._length * _width);
+                    System.arraycopy(small._coding, small._offset, merged._coding, position, small._length);
+                    position += small._length;
+                }
+                compacted.add(merged);
+                i = j;
+            }
+        }
+        _segments = compacted;
+        _ownsLast = false;
+        _starts = null;
+    }
+
+    /** Answer the position in the sequence of the first pearl of each segment. Appending to the last segment does not change where it
+     *  starts, so the answer is only rebuilt when segments are added, removed or change length part way along. */
+    private int[] starts() {
+        int[] result = _starts;
+        if (result == null) {
+            result = new int[_segments.size()];
+            int start = 0;
+            for (int i = 0; i < result.length; i++) {
+                result[i] = start;
+                start += _segments.get(i)._length;
+            }
+            _starts = result;
+        }
+        return result;
+    }
+
+    /** Answer the position of the segment that holds the pearl at the given index, given where each segment starts. Segments are never
+     *  empty so the starts are distinct. */
+    private static int SegmentIndex(int[] starts, int index) {
+        int result = Arrays.binarySearch(starts, index);
+        return result >= 0 ? result : -result - 2;
+    }
+
+    private void encode(Pearl p, Segment segment, int position) {
+        if (!p.isFrom(_domain)) throw new MetaModelException("Wrong Alphabet");
+        _codec.encode(p, segment._values, position * _width);
+        segment._coding[position] = p.isCoding();
+        segment.changed();
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= _size) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + _size);
+    }
+}
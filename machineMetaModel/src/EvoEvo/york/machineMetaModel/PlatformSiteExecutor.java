@@ -0,0 +1,61 @@
+package EvoEvo.york.machineMetaModel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/** A site executor with a fixed number of platform threads, each of which owns a share of the tasks and sweeps through them, running each
+ *  in turn, before pausing for the delay. There's no shared queue, so the cost of scheduling doesn't grow with the number of sites. */
+public class PlatformSiteExecutor extends SiteExecutor {
+    private final int _numThreads;
+
+    private final List<Thread> _threads = new ArrayList<>();
+
+    private volatile boolean _running = true;
+
+    public PlatformSiteExecutor(int numThreads) {
+        _numThreads = numThreads;
+    }
+
+    @Override
+    public void execute(List<? extends Runnable> tasks, long delayInMicroseconds) {
+        // Deal the tasks out to the threads, so that neighbouring sites are spread amongst them:
+        int numThreads = Math.min(_numThreads, tasks.size());
+        for (int i = 0; i < numThreads; i++) {
+            List<Runnable> share = new ArrayList<>();
+            for (int t = i; t < tasks.size(); t += numThreads) share.add(tasks.get(t));
+            Thread thread = new Thread(() -> this.sweep(share, delayInMicroseconds), "Sites " + _threads.size());
+            thread.setDaemon(true);
+            _threads.add(thread);
+            thread.start();
+        }
+    }
+
+    /** Run each of the tasks in turn, and then pause, until the receiver is closed. A task that fails is dropped. */
+    private void sweep(List<Runnable> tasks, long delayInMicroseconds) {
+        List<Runnable> live = new ArrayList<>(tasks);
+        while (_running && !live.isEmpty()) {
+            for (int i = 0; i < live.size() && _running; i++) {
+                try {
+                    this.runOnce(live.get(i));
+                } catch (RuntimeException e) {
+                    live.remove(i--);
+                }
+            }
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(delayInMicroseconds));
+        }
+    }
+
+    @Override
+    public void close() {
+        _running = false;
+        for (Thread t : _threads) {
+            try {
+                t.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
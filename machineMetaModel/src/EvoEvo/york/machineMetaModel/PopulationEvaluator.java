@@ -0,0 +1,12 @@
+package EvoEvo.york.machineMetaModel;
+
+import java.util.List;
+
+/** Interface to which an evaluator of a whole population must conform. Rather than each individual calculating its own fitness, perhaps
+ *  reading the whole of a dataset to do so, a population evaluator calculates the fitness of many individuals at once, so that it can share
+ *  the work, such as reading the dataset, between them. A FunctionalInterface so that lambda expressions may be used to realise it. */
+@FunctionalInterface
+public interface PopulationEvaluator {
+    /** Calculate the fitness of each of the supplied individuals, none of which has been evaluated, and set its fitness key */
+    void evaluate(List<Individual> individuals);
+}
@@ -0,0 +1,287 @@
+package EvoEvo.york.machineMetaModel;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/** A fitness evaluator that hands the evaluation to a pool of worker processes, each running an EvaluatorWorker, so that the work is spread
+ *  across processes and the data they evaluate against is held in their heaps rather than in that of the process that uses the pool.
+ *  Requests are queued and each worker's connection takes them in batches, keeping up to the pipeline depth of batches in flight so that a
+ *  worker need not wait for the next batch once it's finished one. If a worker process dies it's restarted and its unanswered requests are
+ *  sent again, each on its own so that one that kills its worker doesn't take others with it. A request that has been sent MAX_ATTEMPTS
+ *  times without an answer fails. */
+public class ProcessEvaluatorPool implements FitnessEvaluator, AutoCloseable {
+    private final static Logger _logger = Logger.getLogger("EvoEvo");
+
+    /** The number of times in succession that a worker may fail to start before it's given up on */
+    static final int MAX_RESTARTS = 3;
+
+    /** The number of times a request may be sent to workers that die before answering it, before the request fails */
+    static final int MAX_ATTEMPTS = 3;
+
+    /** The time, in milliseconds, to wait for a worker to connect before checking that its process is still running */
+    static final int ACCEPT_INTERVAL = 1000;
+
+    /** A request for the fitness of some packed code */
+    private static class Request {
+        final double[] _packedCode;
+        final CompletableFuture<Double> _result = new CompletableFuture<>();
+
+        /** The number of times the request has been sent to a worker that died before answering it */
+        int _failures = 0;
+
+        Request(double[] packedCode) {
+            _packedCode = packedCode;
+        }
+    }
+
+    private final ServerSocket _serverSocket;
+
+    /** The command that runs a worker, to which the pool's port and the worker's index are added */
+    private final List<String> _command;
+
+    private final int _batchSize;
+
+    private final int _pipelineDepth;
+
+    /** The requests that have not yet been sent to any worker */
+    private final BlockingDeque<Request> _requests = new LinkedBlockingDeque<>();
+
+    /** The current process of each worker */
+    private final Process[] _processes;
+
+    private final List<Thread> _connections = new ArrayList<>();
+
+    /** The number of workers that have not been given up on */
+    private final AtomicInteger _numLive;
+
+    private volatile boolean _closed = false;
+
+    /** Start the given number of worker processes, each running the given command with the pool's port and its index added to the end */
+    public ProcessEvaluatorPool(List<String> command, int numWorkers, int batchSize, int pipelineDepth) throws IOException {
+        _command = new ArrayList<>(command);
+        _batchSize = batchSize;
+        _pipelineDepth = pipelineDepth;
+        _processes = new Process[numWorkers];
+        _numLive = new AtomicInteger(numWorkers);
+        _serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        _serverSocket.setSoTimeout(ACCEPT_INTERVAL);
+
+        for (int i = 0; i < numWorkers; i++) {
+            int index = i;
+            Thread t = new Thread(() -> this.serveWorker(index), "Evaluator " + i);
+            t.setDaemon(true);
+            _connections.add(t);
+            t.start();
+        }
+    }
+
+    /** Queue a request for the fitness of the given code. If the pool is closed, or has given up on all its workers, once the request is
+     *  queued then whatever emptied the queue may have missed it, so it's taken back and failed here. */
+    @Override
+    public CompletableFuture<Double> evaluate(double[] packedCode) {
+        Request r = new Request(packedCode);
+        _requests.add(r);
+        if ((_closed || _numLive.get() == 0) && _requests.remove(r)) {
+            r._result.completeExceptionally(new MetaModelException("No evaluator workers"));
+        }
+        return r._result;
+    }
+
+    /** Keep the worker with the given index running and send it batches of requests until the pool is closed, restarting its process whenever
+     *  it fails. The worker is given up on if it fails to start MAX_RESTARTS times in succession. */
+    private void serveWorker(int index) {
+        Deque<List<Request>> inFlight = new ArrayDeque<>();
+        int failedStarts = 0;
+        while (!_closed) {
+            Socket socket;
+            try {
+                socket = this.launch(index);
+            } catch (IOException e) {
+                this.destroy(index);
+                if (_closed) break;
+                _logger.log(Level.WARNING, String.format("Evaluator worker %d failed to start", index), e);
+                if (++failedStarts >= MAX_RESTARTS) {
+                    this.giveUp(index);
+                    return;
+                }
+                continue;
+            }
+
+            failedStarts = 0;
+            try (Socket s = socket) {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+                this.exchange(inFlight, in, out);
+                out.writeInt(-1);
+                out.flush();
+            } catch (IOException | InterruptedException e) {
+                if (_closed) break;
+                _logger.log(Level.WARNING, String.format("Evaluator worker %d failed, restarting it", index), e);
+                this.retry(inFlight);
+            } finally {
+                if (_closed && _processes[index] != null) this.waitFor(_processes[index]);
+                this.destroy(index);
+            }
+        }
+        this.requeue(inFlight);
+    }
+
+    /** Send batches of requests to the worker and complete them with its answers, keeping up to the pipeline depth of batches in flight, until
+     *  the pool is closed */
+    private void exchange(Deque<List<Request>> inFlight, DataInputStream in, DataOutputStream out) throws IOException, InterruptedException {
+        while (!_closed || !inFlight.isEmpty()) {
+            while (!_closed && inFlight.size() < _pipelineDepth && (inFlight.isEmpty() || inFlight.peekLast().get(0)._failures == 0)) {
+                List<Request> batch = this.takeBatch(inFlight.isEmpty());
+                if (batch.isEmpty()) break;
+                inFlight.add(batch);
+                out.writeInt(batch.size());
+                for (Request r : batch) {
+                    out.writeInt(r._packedCode.length);
+                    for (double v : r._packedCode) out.writeDouble(v);
+                }
+                out.flush();
+            }
+
+            if (!inFlight.isEmpty()) {
+                List<Request> batch = inFlight.peek();
+                double[] results = new double[batch.size()];
+                for (int i = 0; i < results.length; i++) results[i] = in.readDouble();
+                inFlight.remove();
+                for (int i = 0; i < results.length; i++) batch.get(i)._result.complete(results[i]);
+            }
+        }
+    }
+
+    /** Answer the next batch of requests, waiting a while for the first if wait is true, or an empty batch if there are none. A request that
+     *  was in flight when a worker died is sent on its own, and only when nothing else is in flight, that is when wait is true. */
+    private List<Request> takeBatch(boolean wait) throws InterruptedException {
+        List<Request> result = new ArrayList<>(_batchSize);
+        Request first = wait ? _requests.poll(100, TimeUnit.MILLISECONDS) : _requests.poll();
+        if (first == null) return result;
+        if (first._failures > 0 && !wait) {
+            _requests.addFirst(first);
+            return result;
+        }
+        result.add(first);
+        if (first._failures == 0) _requests.drainTo(result, _batchSize - 1);
+        return result;
+    }
+
+    /** Start a process for the worker with the given index and answer its connection. Workers are started one at a time, so that each
+     *  connection accepted is from the process just started. The start fails if the process exits, or hasn't connected within the
+     *  "workerStartTimeout" simulation value. */
+    private Socket launch(int index) throws IOException {
+        List<String> command = new ArrayList<>(_command);
+        command.add(String.valueOf(_serverSocket.getLocalPort()));
+        command.add(String.valueOf(index));
+        synchronized (_serverSocket) {
+            long deadline = System.currentTimeMillis() + Simulation.GetValue("workerStartTimeout", 60000);
+            _processes[index] = new ProcessBuilder(command).inheritIO().start();
+            Socket result = this.accept(_processes[index], deadline);
+            int connected = new DataInputStream(result.getInputStream()).readInt();
+            if (connected != index) {
+                result.close();
+                throw new IOException(String.format("Expected evaluator worker %d but %d connected", index, connected));
+            }
+            return result;
+        }
+    }
+
+    /** Accept the connection of the given worker process, checking while waiting that it's still running and the pool hasn't been closed */
+    private Socket accept(Process process, long deadline) throws IOException {
+        while (true) {
+            try {
+                return _serverSocket.accept();
+            } catch (SocketTimeoutException e) {
+                if (_closed) throw new IOException("Evaluator pool closed while waiting for a worker to connect");
+                if (!process.isAlive()) throw new IOException(String.format("Evaluator worker exited with status %d before connecting", process.exitValue()));
+                if (System.currentTimeMillis() >= deadline) throw new IOException("Timed out waiting for an evaluator worker to connect");
+            }
+        }
+    }
+
+    /** The worker died with the supplied requests in flight. Fail those that have now been sent MAX_ATTEMPTS times, and put the rest back at
+     *  the front of the queue so that they're sent again. */
+    private void retry(Deque<List<Request>> inFlight) {
+        for (List<Request> batch : inFlight) {
+            for (Request r : batch) {
+                if (++r._failures >= MAX_ATTEMPTS) {
+                    r._result.completeExceptionally(new MetaModelException(String.format("Evaluator workers died %d times evaluating a request", r._failures)));
+                }
+            }
+        }
+        this.requeue(inFlight);
+    }
+
+    /** Put the requests in flight back at the front of the queue so that they're sent again, perhaps to another worker */
+    private void requeue(Deque<List<Request>> inFlight) {
+        while (!inFlight.isEmpty()) {
+            List<Request> batch = inFlight.removeLast();
+            for (int i = batch.size() - 1; i >= 0; i--) {
+                if (!batch.get(i)._result.isDone()) _requests.addFirst(batch.get(i));
+            }
+        }
+    }
+
+    /** The worker with the given index can't be started. If it was the last then no request can be answered, so fail them all. */
+    private void giveUp(int index) {
+        _logger.severe(String.format("Giving up on evaluator worker %d", index));
+        if (_numLive.decrementAndGet() > 0) return;
+
+        Request r;
+        while ((r = _requests.poll()) != null) r._result.completeExceptionally(new MetaModelException("No evaluator workers"));
+    }
+
+    private void destroy(int index) {
+        Process p = _processes[index];
+        if (p != null) p.destroy();
+    }
+
+    private void waitFor(Process p) {
+        try {
+            p.waitFor(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Answer the current process of the worker with the given index, so that tests can make it fail */
+    Process getProcess(int index) {
+        return _processes[index];
+    }
+
+    /** Stop all of the workers once they've answered the requests in flight */
+    @Override
+    public void close() throws IOException {
+        _closed = true;
+        for (Thread t : _connections) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        _serverSocket.close();
+
+        Request r;
+        while ((r = _requests.poll()) != null) r._result.completeExceptionally(new MetaModelException("Evaluator pool closed"));
+    }
+}
@@ -0,0 +1,31 @@
+package EvoEvo.york.machineMetaModel;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/** A site executor that schedules each task with a fixed delay on a scheduled thread pool. All of the tasks share the pool's delay queue,
+ *  so this is the baseline against which the others are compared. */
+public class ScheduledSiteExecutor extends SiteExecutor {
+    private final ScheduledExecutorService _executor;
+
+    public ScheduledSiteExecutor(int numThreads) {
+        _executor = Executors.newScheduledThreadPool(numThreads);
+    }
+
+    @Override
+    public void execute(List<? extends Runnable> tasks, long delayInMicroseconds) {
+        tasks.forEach(t -> _executor.scheduleWithFixedDelay(() -> this.runOnce(t), 0, delayInMicroseconds, TimeUnit.MICROSECONDS));
+    }
+
+    @Override
+    public void close() {
+        _executor.shutdownNow();
+        try {
+            _executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package EvoEvo.york.machineMetaModel;
+
+/** A marker interface which is implemented by a machine that holds no per-individual state, so that a single instance may be used by many
+ *  individuals, on many threads, at once. Everything such a machine needs for a particular use is passed as arguments. A domain answers the
+ *  same instance of a shared machine whenever it is asked to construct one with the same code, and individuals do not take ownership of it.
+ *  Its environment is a placeholder rather than any individual, so a shared machine must not be asked to do anything that depends on its
+ *  environment: doIt() isn't supported, and the individual concerned is passed instead. */
+public interface SharedMachine {
+}
@@ -2,12 +2,25 @@ package EvoEvo.york.machineMetaModel;
 
 import java.util.Optional;
 import java.util.Properties;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.logging.Level;
 
 /** A static class representing the entire simulation and, therefore, allowing the definition of run-wide parameters */
 public class Simulation {
     private static Optional<Properties> _Properties = Optional.empty();
 
+    /** The executor on which work that the simulation does in the background, such as expressing machines, is run */
+    private static Executor _Executor = ForkJoinPool.commonPool();
+
+    public static Executor GetExecutor() {
+        return _Executor;
+    }
+
+    public static void SetExecutor(Executor executor) {
+        _Executor = executor;
+    }
+
     public static void SetProperties(Properties props) {
         _Properties = Optional.of(props);
     }
@@ -83,6 +96,11 @@ public class Simulation {
         _Properties.get().put(key, String.valueOf(value));
     }
 
+    public static void SetValue(String key, boolean value) {
+        EnsureProperties();
+        _Properties.get().put(key, String.valueOf(value));
+    }
+
     public static void Initialise() {
         _Properties = Optional.empty();
     }
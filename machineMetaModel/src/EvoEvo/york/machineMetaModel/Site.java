@@ -28,12 +28,38 @@ public abstract class Site extends Space
         this.checkTypeOfNewSubspace(s);
         _runCount = 0;
         super.addSubspace(s);
+        this.occupancyChanged();
     }
 
     @Override
-    public void addSubspace(Space s, int index) {
+    public synchronized void addSubspace(Space s, int index) {
         checkTypeOfNewSubspace(s);
         super.addSubspace(s, index);
+        this.occupancyChanged();
+    }
+
+    @Override
+    public synchronized void removeSubspace(Space space) {
+        super.removeSubspace(space);
+        this.occupancyChanged();
+    }
+
+    @Override
+    public synchronized void empty() {
+        super.empty();
+        this.occupancyChanged();
+    }
+
+    @Override
+    protected synchronized void replaceSubspaces(Space[] subspaces) {
+        super.replaceSubspaces(subspaces);
+        this.occupancyChanged();
+    }
+
+    /** Tell the container that the receiver's occupants have changed. This is done while the receiver is locked, so that the container
+     *  hears of the changes to any one site in the order in which they happened. */
+    private void occupancyChanged() {
+        _container.ifPresent(c -> c.occupancyChanged(this));
     }
 
     /** Ensure that the provided Space, which is a putative subspace, is actually an Individual */
@@ -51,9 +77,7 @@ public abstract class Site extends Space
         if (_logger.isLoggable(Level.FINEST)) {
             _logger.finest(String.format("{%d} Running %s", System.currentTimeMillis(), this));
         }
-        this.getSubspaces()
-            .stream()
-            .forEach(s -> ((Individual)s).run());
+        for (Space s : this.getSubspaces()) ((Individual)s).run();
     }
 
     /** Answer the set of neighbouring sites that have no contained individual subspaces. */
@@ -62,6 +86,12 @@ public abstract class Site extends Space
     /** Answer the set of neighbouring sites that have contained individual subspaces */
     public abstract Set<Space> nonEmptyNeighbours();
 
+    /** Answer one of the neighbouring sites that have no contained individual subspaces, if there are any. Sites that can find one
+     *  without collecting them all should override this. */
+    public Optional<Space> anyEmptyNeighbour() {
+        return this.emptyNeighbours().stream().findAny();
+    }
+
     public int getRunCount() {
         return _runCount;
     }
@@ -0,0 +1,78 @@
+package EvoEvo.york.machineMetaModel;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/** Runs the sites of a space, and perhaps the space itself, over and over again until it's closed, so that the individuals in the sites can
+ *  live their lives concurrently. How the runs are scheduled onto threads is up to the concrete class, so that different ways can be
+ *  compared on the same space. Each run of a task is counted, so that the rate at which the sites are run can be measured. A task that
+ *  throws an exception is not run again, and the exception is kept so that whoever is waiting on the tasks can find out. */
+public abstract class SiteExecutor implements AutoCloseable {
+    private final static Logger _logger = Logger.getLogger("EvoEvo");
+
+    /** The ways in which sites can be run */
+    public enum Backend {
+        /** Each task is scheduled with a fixed delay on a scheduled thread pool */
+        SCHEDULED,
+
+        /** A fixed number of platform threads each sweep their share of the tasks */
+        PLATFORM,
+
+        /** Each task has a virtual thread of its own, which parks between runs */
+        VIRTUAL
+    }
+
+    private final LongAdder _numRuns = new LongAdder();
+
+    /** The exception thrown by each task that has failed */
+    private final Map<Runnable, RuntimeException> _failures = new ConcurrentHashMap<>();
+
+    /** Answer a new executor of the given sort, using the given number of threads where the sort has a fixed number */
+    public static SiteExecutor Create(Backend backend, int numThreads) {
+        switch (backend) {
+            case SCHEDULED:
+                return new ScheduledSiteExecutor(numThreads);
+            case PLATFORM:
+                return new PlatformSiteExecutor(numThreads);
+            case VIRTUAL:
+                return new VirtualSiteExecutor();
+            default:
+                throw new MetaModelException("Unknown site executor: " + backend);
+        }
+    }
+
+    /** Start running each of the supplied tasks, which will usually be sites, over and over again with at least the given delay between the
+     *  end of one run of a task and the start of the next. This may be done more than once, for groups of tasks with different delays. */
+    public abstract void execute(List<? extends Runnable> tasks, long delayInMicroseconds);
+
+    /** Stop running the tasks, waiting for those that are running to finish */
+    @Override
+    public abstract void close();
+
+    /** Answer the number of times that any task has been run */
+    public long getNumRuns() {
+        return _numRuns.sum();
+    }
+
+    /** Answer the exception thrown by the supplied task, if it has failed and so is no longer being run */
+    public Optional<RuntimeException> getFailure(Runnable task) {
+        return Optional.ofNullable(_failures.get(task));
+    }
+
+    /** Run a task once, counting the run and logging and keeping any exception before it's thrown on, which stops the task being run again */
+    protected void runOnce(Runnable task) {
+        try {
+            task.run();
+            _numRuns.increment();
+        } catch (RuntimeException e) {
+            _logger.log(Level.WARNING, String.format("Task %s failed and will not be run again", task), e);
+            _failures.putIfAbsent(task, e);
+            throw e;
+        }
+    }
+}
@@ -13,6 +13,7 @@ public abstract class SourceMachine extends Machine {
         _source = Optional.empty();
     }
 
+    /** Set the source used by doIt(). A machine that is shared between individuals should instead be given its source as an argument. */
     public void setSource(Structure source) {
         this._source = Optional.of(source);
     }
@@ -1,6 +1,7 @@
 package EvoEvo.york.machineMetaModel;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -23,8 +24,8 @@ public abstract class Space implements Cloneable {
 
     /** The spaces that are, hierarchically, contained by this space. This is private as it's likely that many of
      *  the subspaces will have their own threads and we want to synchronise access to this data. This is a list so that an
-     *  index can be used if necessary */
-    private List<Space> _subspaces;
+     *  index can be used if necessary. The list may be replaced as a whole, by replaceSubspaces(). */
+    private volatile List<Space> _subspaces;
 
     /** Construct a new space specifying the space that contains the new one, if any */
     public Space(Optional<Space> container) {
@@ -88,11 +89,22 @@ public abstract class Space implements Cloneable {
         List<Space> subspaces = new ArrayList<>(_subspaces);
         subspaces.stream().forEach((s) -> result.addSubspace(s.klone()));
 
-        _container.ifPresent((c) -> c.addSubspace(result));
+        _container.ifPresent((c) -> c.acceptClone(result));
 
         return result;
     }
 
+    /** A clone of one of the receiver's subspaces has been made, and so is in the receiver too. By default it's just added to the receiver's
+     *  subspaces, but a space that adds clones itself, perhaps many at once, can override this. */
+    protected void acceptClone(Space clone) {
+        this.addSubspace(clone);
+    }
+
+    /** One of the receiver's subspaces has gained or lost subspaces of its own, as when a site gains or loses its occupant. By default
+     *  nothing is done, but a space that keeps track of which of its subspaces are occupied can override this. */
+    protected void occupancyChanged(Space subspace) {
+    }
+
     /** Answer the number of subspaces "inside" the receiver */
     public int numSubspaces() {
         return _subspaces.size();
@@ -112,6 +124,12 @@ public abstract class Space implements Cloneable {
         _subspaces.remove(space);
     }
 
+    /** Replace all of the receiver's subspaces with those supplied, in one step. The subspaces must already have the receiver as their
+     *  container. */
+    protected synchronized void replaceSubspaces(Space[] subspaces) {
+        _subspaces = Collections.synchronizedList(new ArrayList<>(Arrays.asList(subspaces)));
+    }
+
     /** Set the container of the receiver to a possibly new space. (Not nothing, note.) */
     public synchronized void setContainer(Space container) {
         _container.ifPresent((c) -> c.removeSubspace(this));
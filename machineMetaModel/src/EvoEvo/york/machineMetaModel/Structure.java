@@ -1,6 +1,8 @@
 package EvoEvo.york.machineMetaModel;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
@@ -15,6 +17,9 @@ public class Structure implements Cloneable {
     /** The space within which the structure exists. Note that a structure cannot be "environment-less". */
     protected Space _environment;
 
+    /** The units of transcription in the code, worked out when first needed. A copy of the structure has the same code and so shares them. */
+    private volatile List<Locus> _loci;
+
     /** Override the standard clone() method to clone the receiving structure. However, it's always possible that cloning
      *  a structure will be done inaccurately and the decision about whether is left to the machine that is invoking this method.
      *  @throws CloneNotSupportedException */
@@ -22,12 +27,23 @@ public class Structure implements Cloneable {
     public Object clone() throws CloneNotSupportedException {
         Structure result = (Structure)super.clone();
         result._domain = _domain;
-        result._code = new ArrayList<>();
-        _code.stream().forEach(p -> result._code.add(p.klone()));
+        result._code = Domain.exactCopy(_code);
         result._environment = _environment;
         return result;
     }
 
+    /** Answer a copy of the receiver, of the same class and in the same environment, but with the supplied code rather than a copy of the
+     *  receiver's */
+    public Structure withCode(List<Pearl> code) {
+        try {
+            Structure result = (Structure)super.clone();
+            result.setCode(code);
+            return result;
+        } catch (CloneNotSupportedException e) {
+            throw new MetaModelException("Clone Not Supported");
+        }
+    }
+
     /** A version of clone() that does not throw a checked exception */
     public Structure klone() {
         try {
@@ -39,15 +55,15 @@ public class Structure implements Cloneable {
 
     /** Construct a new Structure with the provided symbols each of which must be drawn from the supplied domain.
      *  The members of the code list are expected to be clones of the base symbols as they're new instances, not
-     *  just references to existing instances. */
+     *  just references to existing instances. If the domain packs its code then the structure holds a packed copy of the supplied code. */
     public Structure(Space environment, List<Pearl> code, Domain domain) {
-        _domain = domain;
-        _environment = environment;
-        _code = code;
         assert code != null;
         assert environment != null;
         assert domain != null;
         domain.checkTypeOfAll(code);
+        _domain = domain;
+        _environment = environment;
+        _code = domain.adoptCode(code);
     }
 
     public Domain getDomain() {
@@ -86,7 +102,42 @@ public class Structure implements Cloneable {
     }
 
     public void setCode(List<Pearl> code) {
-        _code = code;
+        _code = _domain.adoptCode(code);
+        _loci = null;
+    }
+
+    /** Answer the units of transcription in the receiver's code, in order. If the domain has promoters then there is a locus starting at each
+     *  promoter and running up to the next, or to the end of the code; any pearls before the first promoter are not transcribed. Otherwise
+     *  the whole of the code is a single locus. */
+    public List<Locus> getLoci() {
+        List<Locus> result = _loci;
+        if (result == null) {
+            result = this.findLoci();
+            _loci = result;
+        }
+        return result;
+    }
+
+    private List<Locus> findLoci() {
+        if (!_domain.hasPromoters()) return Collections.singletonList(new Locus(0, _code.size()));
+
+        int[] promoters;
+        if (_code instanceof PackedCode) {
+            promoters = ((PackedCode)_code).promoterPositions();
+        } else {
+            promoters = new int[_code.size()];
+            int count = 0;
+            for (int i = 0; i < _code.size(); i++) {
+                if (_domain.isPromoter(_code.get(i))) promoters[count++] = i;
+            }
+            promoters = Arrays.copyOf(promoters, count);
+        }
+
+        List<Locus> result = new ArrayList<>(promoters.length);
+        for (int i = 0; i < promoters.length; i++) {
+            result.add(new Locus(promoters[i], i + 1 < promoters.length ? promoters[i + 1] : _code.size()));
+        }
+        return Collections.unmodifiableList(result);
     }
 
     @Override
@@ -29,14 +29,20 @@ public class Toroid2DSite extends Site {
     @Override
     public Set<Space> emptyNeighbours() {
         Toroidal2DSpace container = (Toroidal2DSpace)_container.get();
-        return container.findNeighbours(_xpos, _ypos, sp -> sp.isEmpty());
+        return container.neighboursIn(_xpos, _ypos, ~container.occupiedNeighbours(_xpos, _ypos) & container.allNeighbours());
     }
 
     /** Answer the set of neighbouring sites that have contained individual subspaces */
     @Override
     public Set<Space> nonEmptyNeighbours() {
         Toroidal2DSpace container = (Toroidal2DSpace)_container.get();
-        return container.findNeighbours(_xpos, _ypos, sp -> !sp.isEmpty());
+        return container.neighboursIn(_xpos, _ypos, container.occupiedNeighbours(_xpos, _ypos));
+    }
+
+    /** Answer one of the empty neighbouring sites, chosen at random from the container's neighbour table */
+    @Override
+    public Optional<Space> anyEmptyNeighbour() {
+        return ((Toroidal2DSpace)_container.get()).anyEmptyNeighbour(_xpos, _ypos);
     }
 
     @Override
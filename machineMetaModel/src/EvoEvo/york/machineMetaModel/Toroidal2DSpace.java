@@ -1,20 +1,109 @@
 package EvoEvo.york.machineMetaModel;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 
-/** A sort of space where the subspaces are arranged in a 2D surface which wraps in both dimensions */
+/** A sort of space where the subspaces are arranged in a 2D surface which wraps in both dimensions. The receiver keeps track of which of its
+ *  sites are occupied, as the sites tell it when their occupants change, so that empty sites can be found and the occupancy of the
+ *  neighbours of a site answered without looking inside every site. The neighbours of each cell are worked out once, when the receiver is
+ *  constructed, for either a Moore or a von Neumann neighbourhood of some radius. */
 public abstract class Toroidal2DSpace extends Space {
+    /** The shape of the neighbourhood of a cell: all the cells within the radius in both dimensions, or just those within the radius by
+     *  Manhattan distance */
+    public enum Neighbourhood {
+        MOORE,
+        VON_NEUMANN
+    }
+
+    /** The largest number of neighbours a cell may have, so that their occupancy fits in a mask */
+    public static final int MAX_NEIGHBOURS = 64;
+
     int _xSize;
     int _ySize;
 
+    /** The furthest a neighbour may be from a cell in either dimension */
+    private final int _radius;
+
+    /** The number of neighbours of each cell, and the neighbouring cells of each cell in turn, in the order of the bits of a neighbour
+     *  mask */
+    private final int _numNeighbours;
+    private final int[] _neighbourCells;
+
+    /** The receiver's sites in cell order, so that they can be found without locking the subspaces, or null if they have changed since it
+     *  was last made */
+    private volatile Space[] _sites;
+
+    /** One bit for each cell, set if the site there is occupied. This is read without locking. */
+    private final AtomicLongArray _occupied;
+
+    /** The cells that are empty, in no particular order, of which the first _numFree are valid, and the position of each cell in that
+     *  array, or -1 if it's occupied. Both are guarded by _freeCells. */
+    private final int[] _freeCells;
+    private final int[] _freePosition;
+    private int _numFree;
+
+    /** Those who want to know when sites become occupied or empty */
+    private final List<Consumer<Space>> _occupancyObservers = new CopyOnWriteArrayList<>();
+
+    /** True while the receiver's sites are being updated in tiles, during which only the occupancy bits are kept up to date */
+    private volatile boolean _freeCellsSuspended = false;
+
+    /** Construct a toroid with the neighbourhood given by the "neighbourhood" and "neighbourhoodRadius" properties, by default the eight
+     *  cells around each cell */
     public Toroidal2DSpace(Optional<Space> container, int xSize, int ySize) {
+        this(container, xSize, ySize,
+             Neighbourhood.valueOf(Simulation.GetValue("neighbourhood", Neighbourhood.MOORE.name()).toUpperCase()),
+             Simulation.GetValue("neighbourhoodRadius", 1));
+    }
+
+    public Toroidal2DSpace(Optional<Space> container, int xSize, int ySize, Neighbourhood neighbourhood, int radius) {
         super(container);
         _xSize = xSize;
         _ySize = ySize;
+        _radius = radius;
+
+        // Work out the offsets of the neighbours and then the neighbours of every cell:
+        List<int[]> offsets = new ArrayList<>();
+        for (int dx = -radius; dx <= radius; dx++) {
+            for (int dy = -radius; dy <= radius; dy++) {
+                if ((dx != 0 || dy != 0) && (neighbourhood == Neighbourhood.MOORE || Math.abs(dx) + Math.abs(dy) <= radius)) {
+                    offsets.add(new int[]{dx, dy});
+                }
+            }
+        }
+        if (offsets.size() > MAX_NEIGHBOURS) {
+            throw new MetaModelException(String.format("A %s neighbourhood of radius %d has more than %d neighbours", neighbourhood, radius, MAX_NEIGHBOURS));
+        }
+        int numCells = xSize * ySize;
+        _numNeighbours = offsets.size();
+        _neighbourCells = new int[numCells * _numNeighbours];
+        for (int x = 0; x < xSize; x++) {
+            for (int y = 0; y < ySize; y++) {
+                int base = this.cellOf(x, y) * _numNeighbours;
+                for (int n = 0; n < _numNeighbours; n++) {
+                    _neighbourCells[base + n] = this.cellOf(Math.floorMod(x + offsets.get(n)[0], xSize), Math.floorMod(y + offsets.get(n)[1], ySize));
+                }
+            }
+        }
+
+        // All of the cells start off empty:
+        _occupied = new AtomicLongArray((numCells + 63) >>> 6);
+        _freeCells = new int[numCells];
+        _freePosition = new int[numCells];
+        for (int cell = 0; cell < numCells; cell++) {
+            _freeCells[cell] = cell;
+            _freePosition[cell] = cell;
+        }
+        _numFree = numCells;
     }
 
     /** Answer the supplied coordinate mapped onto the x-axis of the toroid */
@@ -27,37 +116,298 @@ public abstract class Toroidal2DSpace extends Space {
         return (y < 0) ? y + _ySize : (y >= _ySize ? y - _ySize : y );
     }
 
-    /** Answer the set of spaces that are adjacent to the supplied coordinates and which satisfy some predicate. */
+    /** Answer the number of neighbours of each cell */
+    public int numNeighbours() {
+        return _numNeighbours;
+    }
+
+    /** Answer the set of spaces that are neighbours of the supplied coordinates and which satisfy some predicate. */
     public Set<Space> findNeighbours(int xPos, int yPos, Predicate<Space> p) {
         Set<Space> result = new HashSet<>();
-        for (int x = xPos - 1; x <= xPos + 1; x++) {
-            for (int y = yPos - 1; y <= yPos + 1; y++) {
-                if (x != xPos || y != yPos) {
-                    Space space = this.getSubspace(this.mapX(x), this.mapY(y));
-                    if (p.test(space))
-                        result.add(space);
-                }
-            }
+        int base = this.cellOf(xPos, yPos) * _numNeighbours;
+        for (int n = 0; n < _numNeighbours; n++) {
+            Space space = this.siteAt(_neighbourCells[base + n]);
+            if (p.test(space))
+                result.add(space);
         }
         return result;
     }
 
     /** Answer the Subspace at position (x,y) */
     public Space getSubspace(int x, int y) {
-        return this.getSubspace((x *_ySize) + y);
+        return this.siteAt(this.cellOf(x, y));
     }
 
-    /** Find an empty space in the receiver and answer the coordiinates as an x,y pair. If the space is full, this just
-     *  does not terminate */
+    /** Answer the site of the given cell. Once all of the sites are in place they're kept in an array, so that they can be found without
+     *  copying or locking the subspaces. */
+    private Space siteAt(int cell) {
+        Space[] sites = _sites;
+        if (sites == null) {
+            if (this.numSubspaces() != _xSize * _ySize) return this.getSubspace(cell);
+            sites = this.getSubspaces().toArray(new Space[0]);
+            _sites = sites;
+        }
+        return sites[cell];
+    }
+
+    @Override
+    public synchronized void addSubspace(Space s) {
+        super.addSubspace(s);
+        _sites = null;
+    }
+
+    @Override
+    public synchronized void addSubspace(Space s, int index) {
+        super.addSubspace(s, index);
+        _sites = null;
+    }
+
+    @Override
+    public synchronized void removeSubspace(Space space) {
+        super.removeSubspace(space);
+        _sites = null;
+    }
+
+    @Override
+    public synchronized void empty() {
+        super.empty();
+        _sites = null;
+    }
+
+    @Override
+    protected synchronized void replaceSubspaces(Space[] subspaces) {
+        super.replaceSubspaces(subspaces);
+        _sites = null;
+    }
+
+    /** Answer the index of the cell at position (x,y), which is also the index of its site amongst the receiver's subspaces */
+    protected int cellOf(int x, int y) {
+        return (x * _ySize) + y;
+    }
+
+    /** Find an empty space in the receiver, chosen at random, and answer the coordinates as an x,y pair. If the space is full, this throws
+     *  a MetaModelException. */
     public int[] findEmptySpace() {
-        int[] result = new int[2];
-        boolean found = false;
-        do {
-            result[0] = ThreadLocalRandom.current().nextInt(Simulation.GetValue("xSize"));
-            result[1] = ThreadLocalRandom.current().nextInt(Simulation.GetValue("ySize"));
-
-            found = this.getSubspace(result[0], result[1]).isEmpty();
-        } while (!found);
+        int cell;
+        synchronized (_freeCells) {
+            if (_numFree == 0) throw new MetaModelException("No empty space in a full toroidal space");
+            cell = _freeCells[ThreadLocalRandom.current().nextInt(_numFree)];
+        }
+        return new int[]{cell / _ySize, cell % _ySize};
+    }
+
+    /** Answer the number of the receiver's cells whose sites are empty */
+    public int numEmptyCells() {
+        synchronized (_freeCells) {
+            return _numFree;
+        }
+    }
+
+    /** Answer the sites of the receiver that are empty at the moment */
+    public List<Space> emptySites() {
+        int[] cells;
+        synchronized (_freeCells) {
+            cells = Arrays.copyOf(_freeCells, _numFree);
+        }
+        List<Space> result = new ArrayList<>(cells.length);
+        for (int cell : cells) result.add(this.siteAt(cell));
+        return result;
+    }
+
+    /** True if the site at position (x,y) is occupied */
+    public boolean isOccupied(int x, int y) {
+        return this.isOccupied(this.cellOf(x, y));
+    }
+
+    private boolean isOccupied(int cell) {
+        return (_occupied.get(cell >>> 6) & (1L << (cell & 63))) != 0;
+    }
+
+    /** Answer a mask with a bit set for each neighbour of position (x,y) whose site is occupied. The bits are in the order of the
+     *  neighbours in the receiver's neighbour table. */
+    public long occupiedNeighbours(int x, int y) {
+        long result = 0;
+        int base = this.cellOf(x, y) * _numNeighbours;
+        for (int n = 0; n < _numNeighbours; n++) {
+            if (this.isOccupied(_neighbourCells[base + n])) result |= 1L << n;
+        }
+        return result;
+    }
+
+    /** Answer a copy of the occupancy of the receiver's cells, a bit for each, so that an update of every site can look at the sites that were
+     *  occupied when it began rather than at those it has since filled or emptied */
+    public long[] occupancy() {
+        long[] result = new long[_occupied.length()];
+        for (int w = 0; w < result.length; w++) result[w] = _occupied.get(w);
+        return result;
+    }
+
+    /** True if the site at position (x,y) is occupied in the supplied copy of the receiver's occupancy */
+    public boolean wasOccupied(int x, int y, long[] occupancy) {
+        int cell = this.cellOf(x, y);
+        return (occupancy[cell >>> 6] & (1L << (cell & 63))) != 0;
+    }
+
+    /** Answer a mask with a bit set for each neighbour of position (x,y) whose site is occupied in the supplied copy of the receiver's
+     *  occupancy. The bits are in the order of the neighbours in the receiver's neighbour table. */
+    public long occupiedNeighbours(int x, int y, long[] occupancy) {
+        long result = 0;
+        int base = this.cellOf(x, y) * _numNeighbours;
+        for (int n = 0; n < _numNeighbours; n++) {
+            int cell = _neighbourCells[base + n];
+            if ((occupancy[cell >>> 6] & (1L << (cell & 63))) != 0) result |= 1L << n;
+        }
         return result;
     }
+
+    /** Answer a mask with a bit set for every neighbour of a cell */
+    public long allNeighbours() {
+        return _numNeighbours == MAX_NEIGHBOURS ? -1L : (1L << _numNeighbours) - 1;
+    }
+
+    /** Answer the set of sites neighbouring position (x,y) whose bits are set in the supplied neighbour mask */
+    public Set<Space> neighboursIn(int x, int y, long mask) {
+        Set<Space> result = new HashSet<>();
+        int base = this.cellOf(x, y) * _numNeighbours;
+        for (int n = 0; n < _numNeighbours; n++) {
+            if ((mask & (1L << n)) != 0) result.add(this.siteAt(_neighbourCells[base + n]));
+        }
+        return result;
+    }
+
+    /** Answer the nth neighbour, in the order of the receiver's neighbour table, of position (x,y) */
+    public Space getNeighbour(int x, int y, int n) {
+        return this.siteAt(_neighbourCells[this.cellOf(x, y) * _numNeighbours + n]);
+    }
+
+    /** Answer one of the empty sites neighbouring position (x,y), chosen at random, or nothing if they're all occupied. Nothing is
+     *  allocated unless a site is found, as this is asked by every site at every tick. */
+    public Optional<Space> anyEmptyNeighbour(int x, int y) {
+        if (_numNeighbours == 0) return Optional.empty();
+        int base = this.cellOf(x, y) * _numNeighbours;
+        int start = ThreadLocalRandom.current().nextInt(_numNeighbours);
+        for (int i = 0; i < _numNeighbours; i++) {
+            int n = start + i < _numNeighbours ? start + i : start + i - _numNeighbours;
+            int cell = _neighbourCells[base + n];
+            if (!this.isOccupied(cell)) return Optional.of(this.siteAt(cell));
+        }
+        return Optional.empty();
+    }
+
+    /** One of the receiver's sites has gained or lost its occupant, so update the record of which cells are occupied. */
+    @Override
+    protected void occupancyChanged(Space subspace) {
+        if (!(subspace instanceof Toroid2DSite)) return;
+        Toroid2DSite site = (Toroid2DSite)subspace;
+        int cell = this.cellOf(site.getXPosition(), site.getYPosition());
+        boolean occupied = !site.isEmpty();
+        long bit = 1L << (cell & 63);
+
+        if (_freeCellsSuspended) {
+            // Only the thread updating the site's tile changes it, so the bit alone can be set or cleared without locking:
+            long previous = _occupied.getAndUpdate(cell >>> 6, w -> occupied ? w | bit : w & ~bit);
+            if (((previous & bit) != 0) != occupied) this.notifyOccupancyObservers(site);
+            return;
+        }
+        synchronized (_freeCells) {
+            if (occupied == this.isOccupied(cell)) return;
+            if (occupied) {
+                _occupied.getAndUpdate(cell >>> 6, w -> w | bit);
+
+                // Move the last free cell into the place of this one:
+                int position = _freePosition[cell];
+                int last = _freeCells[--_numFree];
+                _freeCells[position] = last;
+                _freePosition[last] = position;
+                _freePosition[cell] = -1;
+            } else {
+                _occupied.getAndUpdate(cell >>> 6, w -> w & ~bit);
+                _freeCells[_numFree] = cell;
+                _freePosition[cell] = _numFree++;
+            }
+        }
+        this.notifyOccupancyObservers(site);
+    }
+
+    /** Ask to be told of each of the receiver's sites whenever it becomes occupied or empty. The observer is told by the thread that changed
+     *  the site, while the site is still locked, so it should do very little. */
+    public void addOccupancyObserver(Consumer<Space> observer) {
+        _occupancyObservers.add(observer);
+    }
+
+    private void notifyOccupancyObservers(Space site) {
+        for (Consumer<Space> observer : _occupancyObservers) observer.accept(site);
+    }
+
+    /** Update every site of the receiver once, synchronously, by applying the supplied rule to it. The rule may change the site it's given
+     *  and look at, or replicate from, the site's neighbours, but must not change any other site. The toroid is divided into tiles at least
+     *  twice the neighbourhood radius across, coloured so that no two tiles of the same colour are adjacent, even where the toroid wraps.
+     *  The tiles of each colour are updated in parallel, and the sites within a tile one after another, so no two sites that share a
+     *  neighbour are ever updated at the same time and the rule needs no locks. While the update is under way the empty cells are not
+     *  indexed, so findEmptySpace() and emptySites() should not be used by the rule. */
+    public void updateInTiles(int tileSize, Consumer<Space> rule) {
+        int size = Math.max(tileSize, 2 * _radius);
+        int[] xStarts = TileStarts(_xSize, size);
+        int[] yStarts = TileStarts(_ySize, size);
+        int numXTiles = xStarts.length - 1;
+        int numYTiles = yStarts.length - 1;
+
+        _freeCellsSuspended = true;
+        try {
+            for (int xColour = 0; xColour < NumColours(numXTiles); xColour++) {
+                for (int yColour = 0; yColour < NumColours(numYTiles); yColour++) {
+                    // Collect the tiles of this colour and update them in parallel:
+                    List<int[]> tiles = new ArrayList<>();
+                    for (int tx = 0; tx < numXTiles; tx++) {
+                        for (int ty = 0; ty < numYTiles; ty++) {
+                            if (ColourOf(tx, numXTiles) == xColour && ColourOf(ty, numYTiles) == yColour) tiles.add(new int[]{tx, ty});
+                        }
+                    }
+                    tiles.parallelStream().forEach(t -> {
+                        for (int x = xStarts[t[0]]; x < xStarts[t[0] + 1]; x++) {
+                            for (int y = yStarts[t[1]]; y < yStarts[t[1] + 1]; y++) rule.accept(this.siteAt(this.cellOf(x, y)));
+                        }
+                    });
+                }
+            }
+        } finally {
+            _freeCellsSuspended = false;
+            this.indexFreeCells();
+        }
+    }
+
+    /** Answer the first coordinate of each of the tiles along an axis of the given size, followed by the size itself. There are as many
+     *  tiles as will fit of at least the given tile size, the spare cells being spread amongst them. */
+    static int[] TileStarts(int axisSize, int tileSize) {
+        int numTiles = Math.max(1, axisSize / tileSize);
+        int[] result = new int[numTiles + 1];
+        for (int t = 0; t <= numTiles; t++) result[t] = (int)((long)t * axisSize / numTiles);
+        return result;
+    }
+
+    /** Answer the number of colours needed for the given number of tiles in a ring, so that adjacent tiles have different colours */
+    static int NumColours(int numTiles) {
+        return numTiles == 1 ? 1 : (numTiles % 2 == 0 ? 2 : 3);
+    }
+
+    /** Answer the colour of a tile in a ring of tiles. Tiles alternate between two colours, but if there's an odd number the last has a third
+     *  colour, as it's next to the first. */
+    static int ColourOf(int tile, int numTiles) {
+        return (numTiles % 2 == 1 && numTiles > 1 && tile == numTiles - 1) ? 2 : tile % 2;
+    }
+
+    /** Make the index of empty cells again from the occupancy bits */
+    private void indexFreeCells() {
+        synchronized (_freeCells) {
+            _numFree = 0;
+            for (int cell = 0; cell < _freePosition.length; cell++) {
+                if (this.isOccupied(cell)) {
+                    _freePosition[cell] = -1;
+                } else {
+                    _freeCells[_numFree] = cell;
+                    _freePosition[cell] = _numFree++;
+                }
+            }
+        }
+    }
 }
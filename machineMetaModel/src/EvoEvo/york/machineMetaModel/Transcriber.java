@@ -6,20 +6,37 @@ import java.util.stream.Collectors;
 /** A transcriber machine reads a portion of a genome (that is, the machine template repository) and transcribes it into
  *  a structure that takes the role of a transcription unit. Rather than being realeased into the environment, the transcription
  *  unit is returned from the doIt method. */
-public class Transcriber extends SourceMachine implements EssentialMachine {
+public class Transcriber extends SourceMachine implements EssentialMachine, SharedMachine {
 
     public Transcriber(Space environment, List<Pearl> code, Domain domain) throws MetaModelException {
         super(environment, code, domain);
     }
 
-    /** Generate, and return, the transcription unit from the supplied source structure. Presently this is dim, although
-     *  its one bit of cleverness is that the resulting transcription unit includes no non-coding units. */
+    /** A transcriber is shared between individuals so has no source structure of its own to transcribe; use transcribe() instead. */
     @Override
     public Structure doIt() {
-        this.ensureSource();
-        Structure result = _source.get().klone();
+        throw new MetaModelException("A shared transcriber must be given the structure to transcribe");
+    }
+
+    /** Generate, and return, the transcription unit from the whole of the supplied source structure */
+    public Structure transcribe(Structure source) {
+        return this.transcribe(source, new Locus(0, source.size()));
+    }
+
+    /** Generate, and return, the transcription unit from the given locus of the supplied source structure. Presently this is dim, although
+     *  its one bit of cleverness is that the resulting transcription unit includes no non-coding units. If the source's code is packed then
+     *  the transcription unit's code is just a view of the source's coding pearls and no pearls are copied. Either way, only the pearls of
+     *  the locus are looked at. */
+    public Structure transcribe(Structure source, Locus locus) {
+        List<Pearl> code = source.getCode();
+        if (code instanceof PackedCode) {
+            return source.withCode(((PackedCode)code).codingView(locus.getBegin(), locus.getEnd()));
+        }
 
-        result.setCode(result.getCode().stream().filter(p -> p.isCoding()).collect(Collectors.toList()));
-        return result;
+        return source.withCode(code.subList(locus.getBegin(), locus.getEnd())
+                                   .stream()
+                                   .filter(p -> p.isCoding())
+                                   .map(p -> p.klone())
+                                   .collect(Collectors.toList()));
     }
 }
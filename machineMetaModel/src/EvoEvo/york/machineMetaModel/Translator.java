@@ -5,22 +5,27 @@ import java.util.List;
 /** A translator machine is responsible for taking a transcription unit and building the machine that is coded for
  *  by that transcription unit.
  *  todo: resolve issues around the absence of start and end locations and the fact that only a single machine is coded for by the transcription unit. */
-public class Translator extends SourceMachine  implements EssentialMachine {
+public class Translator extends SourceMachine  implements EssentialMachine, SharedMachine {
     public Translator(Space environment, List<Pearl> code, Domain domain) throws MetaModelException {
         super(environment, code, domain);
     }
 
-    /** A translator machine must take its source structure, which is the transcription unit, and
-     *  generate the machine that is encoded by that structure */
+    /** A translator is shared between individuals so has no environment of its own in which to build a machine; use translate() instead. */
     @Override
     public Structure doIt() {
-        this.ensureSource();
+        throw new MetaModelException("A shared translator must be given the environment of the machine it translates");
+    }
 
-        // The domain of the source structure defines the sort of machine that the supplied transcription unit codes for.
-        // Ask the domain to make a new machine of the appropriate sort and use the source as the code for that machine, even though
+    /** Generate the machine that is encoded by the supplied transcription unit, in the supplied environment */
+    public Machine translate(Structure unit, Space environment) {
+        // The domain of the transcription unit defines the sort of machine that it codes for.
+        // Ask the domain to make a new machine of the appropriate sort and use the unit as the code for that machine, even though
         // in many cases the code will be of zero length
-        return _source.get()
-                      .getDomain()
-                      .constructMachine(_environment, _source.get().getCode());
+        Machine result = unit.getDomain()
+                             .constructMachine(environment, unit.getCode());
+
+        // Compile the code of the new machine into the form it executes against, unless it's a shared machine that's already compiled:
+        if (!result.isCompiled()) result.compile();
+        return result;
     }
 }
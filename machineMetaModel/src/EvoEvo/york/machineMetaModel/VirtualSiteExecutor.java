@@ -0,0 +1,75 @@
+package EvoEvo.york.machineMetaModel;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/** A site executor that gives each task a virtual thread of its own, which runs the task and then parks for the delay, yielding its carrier
+ *  thread to the others. Virtual threads are cheap enough that there can be one for every site of a large grid. They need Java 21 or later,
+ *  so they're made by reflection, and the executor can't be constructed on an earlier Java. */
+public class VirtualSiteExecutor extends SiteExecutor {
+    private final ThreadFactory _factory;
+
+    private final List<Thread> _threads = new ArrayList<>();
+
+    private volatile boolean _running = true;
+
+    public VirtualSiteExecutor() {
+        _factory = VirtualThreadFactory();
+    }
+
+    /** True if this Java has virtual threads */
+    public static boolean IsAvailable() {
+        try {
+            VirtualThreadFactory();
+            return true;
+        } catch (MetaModelException e) {
+            return false;
+        }
+    }
+
+    /** Answer the factory for virtual threads, as answered by Thread.ofVirtual().factory() */
+    private static ThreadFactory VirtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+            return (ThreadFactory)factory.invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new MetaModelException("Virtual threads are not available in Java " + System.getProperty("java.version"));
+        }
+    }
+
+    @Override
+    public void execute(List<? extends Runnable> tasks, long delayInMicroseconds) {
+        long delay = TimeUnit.MICROSECONDS.toNanos(delayInMicroseconds);
+        for (Runnable task : tasks) {
+            Thread thread = _factory.newThread(() -> {
+                while (_running) {
+                    this.runOnce(task);
+                    if (delay > 0) {
+                        LockSupport.parkNanos(delay);
+                    } else {
+                        Thread.yield();
+                    }
+                }
+            });
+            _threads.add(thread);
+            thread.start();
+        }
+    }
+
+    @Override
+    public void close() {
+        _running = false;
+        for (Thread t : _threads) {
+            try {
+                t.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -3,8 +3,13 @@ package EvoEvo.york.machineMetaModel;
 import org.testng.annotations.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
 import static org.testng.Assert.*;
 
@@ -73,6 +78,305 @@ public class ExpressionTests {
         assertTranscriberCodeLength(anotherOne, 5);
     }
 
+    @Test
+    public void locatingAMachineAgainAnswersTheSameMachine() throws Exception {
+        Space container = new TestSpace(Optional.empty());
+
+        Individual i = new ConcreteIndividual(Optional.of(container));
+        buildMinimalMachineStructures(i, (l, k) -> Domain.exactCopy(l));
+
+        // Both the exact type and its superclasses find the same machine:
+        Machine t = i.locateMachine(Transcriber.class);
+        assertTrue(t instanceof Transcriber, "Transcriber located");
+        assertTrue(i.locateMachine(Transcriber.class) == t, "Same transcriber located again");
+        assertTrue(i.locateMachine(SourceMachine.class) instanceof SourceMachine, "Superclass located");
+
+        // Machines that aren't shared, located in one individual, are not those located in its offspring:
+        Individual newIndividual = i.replicate();
+        Machine k = i.locateMachine(Kloner.class);
+        assertTrue(newIndividual.locateMachine(Kloner.class) != k, "Offspring has its own kloner");
+        assertTrue(newIndividual.locateMachine(Kloner.class) == newIndividual.locateMachine(Kloner.class), "Same kloner located again in offspring");
+    }
+
+    @Test
+    public void statelessMachinesAreSharedBetweenIndividuals() throws Exception {
+        Space container = new TestSpace(Optional.empty());
+        Domain transcriberDomain = new MachineDomain("transcriber domain", Transcriber.class);
+        Domain translatorDomain = new MachineDomain("translator domain", Translator.class);
+        Domain reproducerDomain = new MachineDomain("reproducer domain", Reproducer.class);
+        Domain klonerDomain = new MachineDomain("kloner domain", Kloner.class);
+
+        Individual i = new ConcreteIndividual(Optional.of(container));
+        Util.AddTTMachines(i, transcriberDomain, translatorDomain, reproducerDomain, klonerDomain, new ArrayList<>());
+        Individual j = new ConcreteIndividual(Optional.of(container));
+        Util.AddTTMachines(j, transcriberDomain, translatorDomain, reproducerDomain, klonerDomain, new ArrayList<>());
+
+        assertTrue(i.locateMachine(Transcriber.class) == j.locateMachine(Transcriber.class), "Transcriber shared");
+        assertTrue(i.locateMachine(Translator.class) == j.locateMachine(Translator.class), "Translator shared");
+
+        // Offspring share their parent's machines, but not the parent's Kloner which is not stateless:
+        Individual newIndividual = i.replicate();
+        assertTrue(newIndividual.locateMachine(Translator.class) == i.locateMachine(Translator.class), "Translator shared with offspring");
+        assertTrue(newIndividual.locateMachine(Reproducer.class) == i.locateMachine(Reproducer.class), "Reproducer shared with offspring");
+        assertFalse(newIndividual.locateMachine(Kloner.class) == i.locateMachine(Kloner.class), "Kloner not shared");
+        assertTrue(newIndividual.locateMachine(Kloner.class).getEnvironment() == newIndividual, "Kloner belongs to offspring");
+    }
+
+    @Test
+    public void aSharedMachineIsKeptForEachDistinctCode() throws Exception {
+        Space container = new TestSpace(Optional.empty());
+        Domain d = new MachineDomain("transcriber domain", Transcriber.class);
+        List<Pearl> a = Arrays.asList(new TranscriberPearl("1", d));
+        List<Pearl> b = Arrays.asList(new TranscriberPearl("2", d));
+
+        Individual i = new ConcreteIndividual(Optional.of(container));
+        Machine ma = d.constructMachine(i, a);
+        Machine mb = d.constructMachine(i, b);
+        assertTrue(ma != mb, "Different code, different machines");
+
+        // Constructing a machine with other code doesn't forget the first, and neither machine belongs to the individual:
+        assertTrue(d.constructMachine(new ConcreteIndividual(Optional.of(container)), new ArrayList<>(a)) == ma, "Same code, same machine");
+        assertTrue(d.constructMachine(i, b) == mb, "Second machine kept");
+        assertTrue(ma.getEnvironment() != i, "Shared machine not pinned to an individual");
+    }
+
+    @Test (expectedExceptions = MetaModelException.class)
+    public void aSharedReproducerMustBeGivenItsParent() throws Exception {
+        Space container = new TestSpace(Optional.empty());
+        Individual i = new ConcreteIndividual(Optional.of(container));
+        buildMinimalMachineStructures(i, (l, k) -> Domain.exactCopy(l));
+        i.addMachine(new MachineDomain("reproducer domain", Reproducer.class).constructMachine(i, new ArrayList<>()));
+
+        i.locateMachine(Reproducer.class).doIt();
+    }
+
+    @Test (expectedExceptions = MetaModelException.class)
+    public void aSharedTranscriberMustBeGivenItsSource() throws Exception {
+        Space container = new TestSpace(Optional.empty());
+        Individual i = new ConcreteIndividual(Optional.of(container));
+        buildMinimalMachineStructures(i, (l, k) -> Domain.exactCopy(l));
+
+        i.locateMachine(Transcriber.class).doIt();
+    }
+
+    @Test
+    public void lazyExpressionDefersMachinesUntilFirstNeeded() throws Exception {
+        Simulation.SetValue("lazyExpression", true);
+        try {
+            Space container = new TestSpace(Optional.empty());
+
+            Individual i = new ConcreteIndividual(Optional.of(container));
+            buildMinimalMachineStructures(i, (l, k) -> Domain.exactCopy(l));
+
+            Individual newIndividual = i.replicate();
+
+            // Nothing is expressed in the new individual until a machine is needed:
+            assertEquals(newIndividual._machines.size(), 0, "Number of machines");
+            assertTranscriberCodeLength(newIndividual, 5);
+            assertTrue(newIndividual._machines.size() > 1, "Essential machines expressed");
+
+            // Machines in new individual support further replication:
+            Individual anotherOne = newIndividual.replicate();
+            assertTranscriberCodeLength(anotherOne, 5);
+        } finally {
+            Simulation.SetValue("lazyExpression", false);
+        }
+    }
+
+    @Test
+    public void machinesCanBeExpressedAsynchronously() throws Exception {
+        Space container = new TestSpace(Optional.empty());
+
+        Individual i = new ConcreteIndividual(Optional.of(container));
+        buildMinimalMachineStructures(i, (l, k) -> Domain.exactCopy(l));
+
+        Structure transcriberTemplate = i.getRepository()
+                                         .stream()
+                                         .filter(s -> s.getDomain().getMachineType() == Transcriber.class)
+                                         .findFirst()
+                                         .get();
+        Machine m = i.expressMachineAsync(transcriberTemplate).get();
+        assertTrue(m instanceof Transcriber, "Transcriber expressed");
+        assertEquals(m.size(), 5, "transcriber code length");
+
+        // Replication works the same when the essential machines are expressed concurrently:
+        Simulation.SetValue("asyncExpression", true);
+        try {
+            Individual newIndividual = i.replicate();
+            assertTranscriberCodeLength(newIndividual, 5);
+            assertTranscriberCodeLength(newIndividual.replicate(), 5);
+        } finally {
+            Simulation.SetValue("asyncExpression", false);
+        }
+    }
+
+    @Test
+    public void anIndividualCanReplicateOnSeveralThreadsAtOnce() throws Exception {
+        Space container = new TestSpace(Optional.empty());
+
+        Individual i = new ConcreteIndividual(Optional.of(container));
+        buildMinimalMachineStructures(i, (l, k) -> Domain.exactCopy(l));
+
+        List<Thread> threads = new ArrayList<>();
+        List<Individual> offspring = Collections.synchronizedList(new ArrayList<>());
+        for (int t = 0; t < 4; t++) {
+            threads.add(new Thread(() -> { for (int r = 0; r < 25; r++) offspring.add(i.replicate()); }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread t : threads) t.join();
+
+        assertEquals(i.getReplicationCount(), 100, "Replication count");
+        assertEquals(offspring.size(), 100, "Number of offspring");
+        offspring.forEach(o -> assertEquals(o.getRepository().size(), i.getRepository().size(), "Offspring repository"));
+    }
+
+    @Test
+    public void fitnessKeyIsCalculatedOnceAndNotInherited() throws Exception {
+        Space container = new TestSpace(Optional.empty());
+        AtomicInteger calculations = new AtomicInteger(0);
+
+        Individual i = new ConcreteIndividual(Optional.of(container)) {
+            @Override
+            protected double calculateFitnessKey() {
+                return calculations.incrementAndGet();
+            }
+        };
+        buildMinimalMachineStructures(i, (l, k) -> Domain.exactCopy(l));
+
+        assertEquals(i.fitnessKey(), 1.0, "Key calculated");
+        assertEquals(i.fitnessKey(), 1.0, "Key remembered");
+
+        // The offspring calculates its own key:
+        Individual newIndividual = i.replicate();
+        assertEquals(newIndividual.fitnessKey(), 2.0, "Offspring's key calculated");
+        assertTrue(Individual.CompareFitness(i, newIndividual) < 0, "Smaller key is fitter");
+    }
+
+    @Test
+    public void fitnessKeyEvaluationStopsAtTheCutoff() throws Exception {
+        Space container = new TestSpace(Optional.empty());
+        AtomicInteger calculations = new AtomicInteger(0);
+
+        // An individual whose key is 10, found by adding up ten costs of 1:
+        Individual i = new ConcreteIndividual(Optional.of(container)) {
+            @Override
+            protected double calculateFitnessKey() {
+                return this.calculateFitnessKey(Double.POSITIVE_INFINITY);
+            }
+
+            @Override
+            protected double calculateFitnessKey(double cutoff) {
+                calculations.incrementAndGet();
+                double result = 0.0;
+                for (int c = 0; c < 10 && result < cutoff; c++) result += 1.0;
+                return result;
+            }
+        };
+
+        assertEquals(i.fitnessKey(4.0), 4.0, "At least as bad as the cutoff");
+        assertFalse(i.isEvaluated(), "Not evaluated in full");
+        assertEquals(i.fitnessKey(3.0), 4.0, "Known bound answered again");
+        assertEquals(calculations.get(), 1, "Bound remembered");
+
+        assertEquals(i.fitnessKey(20.0), 10.0, "Key less than the cutoff");
+        assertTrue(i.isEvaluated(), "Evaluated in full");
+        assertEquals(i.fitnessKey(), 10.0, "Key remembered");
+        assertEquals(calculations.get(), 2, "Key calculated once in full");
+    }
+
+    @Test
+    public void elitistSearchKeepsTheFittestAndReplicatesThem() throws Exception {
+        ElitistSpace space = new ElitistSpace(Optional.empty());
+        List<Integer> keys = new ArrayList<>();
+        for (int k = 0; k < 10; k++) keys.add(k);
+        Collections.shuffle(keys);
+
+        // Individuals whose offspring have the same key as they do:
+        for (int key : keys) {
+            Individual i = new ConcreteIndividual(Optional.of(space)) {
+                @Override
+                protected double calculateFitnessKey() {
+                    return key;
+                }
+            };
+            buildMinimalMachineStructures(i, (l, k) -> Domain.exactCopy(l));
+        }
+
+        Individual best = space.search().get();
+        assertEquals(best.fitnessKey(), 0.0, "Best individual");
+        assertEquals(space.numSubspaces(), 10, "Population size");
+        double[] survivingKeys = space.getSubspaces().stream().mapToDouble(s -> ((Individual)s).fitnessKey()).sorted().toArray();
+        assertTrue(Arrays.equals(survivingKeys, new double[]{0, 0, 1, 1, 2, 2, 3, 3, 4, 4}), "Survivors and their offspring: " + Arrays.toString(survivingKeys));
+        space.getSubspaces().forEach(s -> assertEquals(s.getContainer().get(), space, "Container"));
+    }
+
+    @Test
+    public void microbialTournamentsCanRunInParallel() throws Exception {
+        MicrobialGASpace space = new MicrobialGASpace(Optional.empty());
+        for (int k = 0; k < 20; k++) {
+            int key = k;
+            Individual i = new ConcreteIndividual(Optional.of(space)) {
+                @Override
+                protected double calculateFitnessKey() {
+                    return key;
+                }
+            };
+            buildMinimalMachineStructures(i, (l, c) -> Domain.exactCopy(l));
+        }
+
+        Individual best = space.search(1000).get();
+        assertEquals(best.fitnessKey(), 0.0, "Fittest individual never loses");
+        assertEquals(space.numSubspaces(), 20, "Population size");
+        assertEquals(space.getSubspaces().stream().distinct().count(), 20L, "Each slot holds a different individual");
+        space.getSubspaces().forEach(s -> assertEquals(s.getContainer().get(), space, "Container"));
+        assertTrue(space.getSubspaces().stream().filter(s -> ((Individual)s).fitnessKey() == 0.0).count() > 1, "Fittest has replicated");
+    }
+
+    @Test
+    public void islandsSearchAndThenExchangeMigrants() throws Exception {
+        IslandSpace space = new IslandSpace(Optional.empty(), IslandSpace.Topology.RING, 1, 1, IslandSpace.Emigrants.BEST);
+        for (int n = 0; n < 3; n++) {
+            ElitistSpace island = new ElitistSpace(Optional.empty());
+            space.addIsland(island);
+            for (int k = 0; k < 10; k++) {
+                int key = n * 100 + k;
+                Individual i = new ConcreteIndividual(Optional.of(island)) {
+                    @Override
+                    protected double calculateFitnessKey() {
+                        return key;
+                    }
+                };
+                buildMinimalMachineStructures(i, (l, c) -> Domain.exactCopy(l));
+            }
+        }
+
+        Individual best = space.search().get();
+        assertEquals(best.fitnessKey(), 0.0, "Best of all the islands");
+        assertEquals(space.numIndividuals(), 30L, "Population size");
+        for (int n = 0; n < 3; n++) {
+            Space island = (Space)space.getIslands().get(n);
+            double bestOfPrevious = (n + 2) % 3 * 100;
+            assertEquals(island.numSubspaces(), 10, "Island population size");
+            island.getSubspaces().forEach(s -> assertEquals(s.getContainer().get(), island, "Container"));
+            assertTrue(island.getSubspaces().stream().anyMatch(s -> ((Individual)s).fitnessKey() == bestOfPrevious), "Migrant from the previous island");
+        }
+    }
+
+    @Test
+    public void selectingTheSmallestKeysPutsThemFirst() throws Exception {
+        double[] keys = new double[1000];
+        for (int i = 0; i < keys.length; i++) keys[i] = ThreadLocalRandom.current().nextInt(100);
+        double[] sorted = keys.clone();
+        Arrays.sort(sorted);
+
+        for (int k : new int[]{1, 10, 500, 1000}) {
+            int[] order = IntStream.range(0, keys.length).toArray();
+            ElitistSpace.SelectSmallest(order, keys, keys.length, k);
+            assertEquals(keys[order[k - 1]], sorted[k - 1], "k-th smallest");
+            for (int i = 0; i < k; i++) assertTrue(keys[order[i]] <= sorted[k - 1], "Smallest first");
+        }
+    }
+
     private void assertTranscriberCodeLength(Individual i, int l) {
         Transcriber t = (Transcriber)i.locateMachine(Transcriber.class);
         assertEquals(t.size(), l, "transcriber code length");
@@ -5,9 +5,15 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
@@ -171,6 +177,37 @@ public class MetaModelTests {
         new Structure(new ConcreteSpace(Optional.empty()), code, _testDomain);
     }
 
+    @Test
+    public void domainConstructsMachinesUsingItsConstructorByDefault() throws Exception {
+        Domain klonerDomain = new Domain("Kloners", Kloner.class);
+        ConcreteSpace environment = new ConcreteSpace(Optional.empty());
+
+        Machine m = klonerDomain.constructMachine(environment, new ArrayList<>());
+        assertTrue(m instanceof Kloner);
+        assertEquals(m.getEnvironment(), environment);
+        assertEquals(m.getDomain(), klonerDomain);
+    }
+
+    @Test
+    public void domainConstructsMachinesUsingRegisteredFactory() throws Exception {
+        List<Domain> seen = new ArrayList<>();
+        _simpleAlphabet.setMachineFactory((e, c, d) -> {
+            seen.add(d);
+            return new AlphabetMachine(e, c, d);
+        });
+
+        Machine m = _simpleAlphabet.constructMachine(new ConcreteSpace(Optional.empty()), new ArrayList<>());
+        assertTrue(m instanceof AlphabetMachine);
+        assertEquals(seen.size(), 1);
+        assertEquals(seen.get(0), _simpleAlphabet);
+    }
+
+    @Test (expectedExceptions = MetaModelException.class)
+    public void domainCannotConstructMachineWithoutSuitableConstructor() throws Exception {
+        // AlphabetMachine is an inner class so has no (Space, List, Domain) constructor:
+        _simpleAlphabet.constructMachine(new ConcreteSpace(Optional.empty()), new ArrayList<>());
+    }
+
     @Test
     public void spaceCanContainOtherSpaces() throws Exception {
         Space container = new ConcreteSpace(Optional.empty());
@@ -222,6 +259,15 @@ public class MetaModelTests {
     class TestToroidal2DSpace extends Toroidal2DSpace {
         public TestToroidal2DSpace(Optional<Space> container, int xSize, int ySize) {
             super(container, xSize, ySize);
+            this.addSites(xSize, ySize);
+        }
+
+        public TestToroidal2DSpace(Optional<Space> container, int xSize, int ySize, Neighbourhood neighbourhood, int radius) {
+            super(container, xSize, ySize, neighbourhood, radius);
+            this.addSites(xSize, ySize);
+        }
+
+        private void addSites(int xSize, int ySize) {
             for (int i = 0; i < xSize; i++) {
                 for (int j = 0; j < ySize; j++) {
                     this.addSubspace(new Toroid2DSite(Optional.of(this), i, j));
@@ -264,4 +310,221 @@ public class MetaModelTests {
         assertEquals(world.getSubspaces().stream().filter((s) -> numNeighbours(world, s)==0).count(), 367, "Central node and outer nodes have no neighbours");
         assertEquals(world.getSubspaces().stream().filter((s) -> numNeighbours(world, s)==1).count(), 8, "Nodes around central node have a single neighbour");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void toroidalSpaceKeepsTrackOfItsEmptySites() {
+        Toroidal2DSpace world = new TestToroidal2DSpace(Optional.empty(), 3, 4);
+        assertEquals(world.numEmptyCells(), 12, "All empty at first");
+
+        // Fill the world, one empty space at a time:
+        List<Space> individuals = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            int[] position = world.findEmptySpace();
+            assertFalse(world.isOccupied(position[0], position[1]), "Found space is empty");
+            individuals.add(new ConcreteIndividual(Optional.of(world.getSubspace(position[0], position[1]))));
+            assertTrue(world.isOccupied(position[0], position[1]), "Found space is now occupied");
+        }
+        assertEquals(world.numEmptyCells(), 0, "All full");
+        assertTrue(world.emptySites().isEmpty(), "No empty sites");
+        assertEquals(world.occupiedNeighbours(1, 1), world.allNeighbours(), "All neighbours occupied");
+        long[] full = world.occupancy();
+
+        // Emptying a site frees it up again:
+        Space site = individuals.get(5).getContainer().get();
+        site.empty();
+        assertEquals(world.emptySites(), Arrays.asList(site), "The emptied site");
+        int[] position = world.findEmptySpace();
+        assertEquals(world.getSubspace(position[0], position[1]), site, "Only empty space");
+        Toroid2DSite t = (Toroid2DSite)site;
+        assertEquals(world.neighboursIn(1, 1, ~world.occupiedNeighbours(1, 1) & world.allNeighbours()),
+                     world.findNeighbours(1, 1, Space::isEmpty), "Empty neighbours from the mask");
+        assertEquals(((Site)world.getSubspace(t.getXPosition(), world.mapY(t.getYPosition() + 1))).emptyNeighbours(), Collections.singleton(site),
+                     "Emptied site is a neighbour");
+
+        // A copy of the occupancy taken earlier still has the site occupied:
+        assertTrue(world.wasOccupied(t.getXPosition(), t.getYPosition(), full), "Occupied in the copy");
+        assertFalse(world.wasOccupied(t.getXPosition(), t.getYPosition(), world.occupancy()), "Empty in a new copy");
+        assertEquals(world.occupiedNeighbours(1, 1, full), world.allNeighbours(), "All neighbours occupied in the copy");
+        assertEquals(world.occupiedNeighbours(1, 1, world.occupancy()), world.occupiedNeighbours(1, 1), "Neighbours occupied now");
+    }
+
+    @Test (expectedExceptions = MetaModelException.class)
+    public void aFullToroidalSpaceHasNoEmptySpace() {
+        Toroidal2DSpace world = new TestToroidal2DSpace(Optional.empty(), 2, 2);
+        for (Space site : world.getSubspaces()) new ConcreteIndividual(Optional.of(site));
+        world.findEmptySpace();
+    }
+
+    @Test
+    public void neighbourhoodsHaveTheRightShapes() {
+        assertEquals(new TestToroidal2DSpace(Optional.empty(), 9, 9, Toroidal2DSpace.Neighbourhood.MOORE, 2).numNeighbours(), 24, "Moore, radius 2");
+        assertEquals(new TestToroidal2DSpace(Optional.empty(), 9, 9, Toroidal2DSpace.Neighbourhood.VON_NEUMANN, 2).numNeighbours(), 12, "Von Neumann, radius 2");
+
+        // The von Neumann neighbours of a corner wrap around the edges:
+        Toroidal2DSpace world = new TestToroidal2DSpace(Optional.empty(), 5, 6, Toroidal2DSpace.Neighbourhood.VON_NEUMANN, 1);
+        Set<Space> expected = new HashSet<>(Arrays.asList(world.getSubspace(4, 0), world.getSubspace(1, 0), world.getSubspace(0, 5), world.getSubspace(0, 1)));
+        assertEquals(world.findNeighbours(0, 0, s -> true), expected, "Corner neighbours");
+
+        // When only one neighbour is empty, that's the one found:
+        for (Space site : expected) {
+            if (site != world.getSubspace(0, 5)) new ConcreteIndividual(Optional.of(site));
+        }
+        for (int i = 0; i < 10; i++) {
+            assertEquals(((Site)world.getSubspace(0, 0)).anyEmptyNeighbour().get(), world.getSubspace(0, 5), "Only empty neighbour");
+        }
+        new ConcreteIndividual(Optional.of(world.getSubspace(0, 5)));
+        assertFalse(((Site)world.getSubspace(0, 0)).anyEmptyNeighbour().isPresent(), "No empty neighbours");
+    }
+
+    @Test (expectedExceptions = MetaModelException.class)
+    public void neighbourhoodsMustFitInAMask() {
+        new TestToroidal2DSpace(Optional.empty(), 20, 20, Toroidal2DSpace.Neighbourhood.MOORE, 4);
+    }
+
+    @Test
+    public void updatingInTilesVisitsEverySiteOnce() {
+        for (int[] shape : new int[][]{{9, 9, 2}, {13, 7, 3}, {5, 5, 16}, {20, 11, 4}}) {
+            Toroidal2DSpace world = new TestToroidal2DSpace(Optional.empty(), shape[0], shape[1]);
+            Map<Space, Integer> visits = new ConcurrentHashMap<>();
+            world.updateInTiles(shape[2], s -> {
+                visits.merge(s, 1, Integer::sum);
+                new ConcreteIndividual(Optional.of(s));
+            });
+            assertEquals(visits.size(), shape[0] * shape[1], "Every site visited");
+            assertTrue(visits.values().stream().allMatch(v -> v == 1), "Each site visited once");
+            assertEquals(world.numEmptyCells(), 0, "Empty cells indexed again afterwards");
+        }
+    }
+
+    @Test
+    public void adjacentTilesHaveDifferentColours() {
+        for (int numTiles = 2; numTiles < 10; numTiles++) {
+            for (int t = 0; t < numTiles; t++) {
+                int colour = Toroidal2DSpace.ColourOf(t, numTiles);
+                assertTrue(colour < Toroidal2DSpace.NumColours(numTiles), "Colour in range");
+                assertTrue(colour != Toroidal2DSpace.ColourOf((t + 1) % numTiles, numTiles), "Next tile has another colour");
+            }
+        }
+        assertTrue(Arrays.equals(Toroidal2DSpace.TileStarts(10, 3), new int[]{0, 3, 6, 10}), "Spare cells spread amongst the tiles");
+    }
+
+    @Test
+    public void siteExecutorsRunEachTaskRepeatedlyUntilClosed() throws Exception {
+        List<SiteExecutor.Backend> backends = new ArrayList<>(Arrays.asList(SiteExecutor.Backend.SCHEDULED, SiteExecutor.Backend.PLATFORM));
+        if (VirtualSiteExecutor.IsAvailable()) backends.add(SiteExecutor.Backend.VIRTUAL);
+
+        for (SiteExecutor.Backend backend : backends) {
+            List<AtomicInteger> counts = new ArrayList<>();
+            List<Runnable> tasks = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                AtomicInteger count = new AtomicInteger();
+                counts.add(count);
+                tasks.add(count::incrementAndGet);
+            }
+            AtomicInteger failures = new AtomicInteger();
+            Runnable failing = () -> {
+                failures.incrementAndGet();
+                throw new MetaModelException("Failing task");
+            };
+            tasks.add(failing);
+
+            SiteExecutor executor = SiteExecutor.Create(backend, 3);
+            executor.execute(tasks, 100);
+            long start = System.currentTimeMillis();
+            while (counts.stream().anyMatch(c -> c.get() < 5) && System.currentTimeMillis() < start + 10000) Thread.sleep(10);
+            executor.close();
+
+            assertTrue(counts.stream().allMatch(c -> c.get() >= 5), backend + " runs every task repeatedly");
+            assertEquals(failures.get(), 1, backend + " does not run a failed task again");
+            assertTrue(executor.getFailure(failing).get() instanceof MetaModelException, backend + " keeps the failure");
+            assertFalse(executor.getFailure(tasks.get(0)).isPresent(), backend + " has no failure for a task that works");
+            int total = counts.stream().mapToInt(AtomicInteger::get).sum();
+            assertEquals(executor.getNumRuns(), (long)total, backend + " counts the runs");
+            Thread.sleep(50);
+            assertEquals(counts.stream().mapToInt(AtomicInteger::get).sum(), total, backend + " stops when closed");
+        }
+    }
+
+    @Test
+    public void virtualSiteExecutorNeedsVirtualThreads() {
+        try {
+            new VirtualSiteExecutor().close();
+            assertTrue(VirtualSiteExecutor.IsAvailable(), "Constructed only with virtual threads");
+        } catch (MetaModelException e) {
+            assertFalse(VirtualSiteExecutor.IsAvailable(), "Fails only without virtual threads");
+        }
+    }
+
+    @Test
+    public void eventsRunInVirtualTimeOrder() {
+        EventEngine engine = new EventEngine();
+        List<String> order = new ArrayList<>();
+        engine.schedule(() -> order.add("b" + engine.getTime()), 5.0, 10.0);
+        engine.schedule(() -> order.add("a" + engine.getTime()), 0.0, 0.0);
+        engine.schedule(() -> order.add("c" + engine.getTime()), 5.0, 0.0);
+
+        assertEquals(engine.runUntil(20.0), 4L, "Events run");
+        assertEquals(order, Arrays.asList("a0.0", "b5.0", "c5.0", "b15.0"), "Time order, then scheduling order");
+        assertEquals(engine.getTime(), 20.0, "Clock moved on");
+        assertEquals(engine.numEvents(), 1, "Only the repeating event is left");
+    }
+
+    @Test
+    public void emptySitesAreNotRunUntilTheyAreOccupied() {
+        Toroidal2DSpace world = new TestToroidal2DSpace(Optional.empty(), 3, 3);
+        new ConcreteIndividual(Optional.of(world.getSubspace(1, 1)));
+        EventEngine engine = new EventEngine();
+        engine.scheduleSites(world, 10.0);
+        assertEquals(engine.numEvents(), 1, "Only the occupied site is scheduled");
+        assertEquals(engine.runUntil(100.0), 11L, "Occupied site run from 0 to 100");
+
+        // A site that becomes occupied is run from one period later:
+        engine.schedule(() -> new ConcreteIndividual(Optional.of(world.getSubspace(0, 0))), 5.0, 0.0);
+        assertEquals(engine.runUntil(200.0), 1L + 10L + 9L, "New occupant at 105, both sites run");
+
+        // A site that becomes empty is dropped after its next event:
+        world.getSubspace(1, 1).empty();
+        engine.runUntil(210.0);
+        assertEquals(engine.numEvents(), 1, "Only the newly occupied site is scheduled");
+    }
+
+    /** An individual that records the position of its site each time it's run */
+    class RecordingIndividual extends ConcreteIndividual {
+        private final List<String> _runs;
+
+        public RecordingIndividual(Optional<Space> container, List<String> runs) {
+            super(container);
+            _runs = runs;
+        }
+
+        @Override
+        public void run() {
+            Toroid2DSite site = (Toroid2DSite)this.getContainer().get();
+            _runs.add(site.getXPosition() + "," + site.getYPosition());
+        }
+    }
+
+    @Test
+    public void sitesFilledTogetherAreRunInTheSameOrderEveryTime() {
+        assertEquals(this.runSitesFilledFromAHashSet(), this.runSitesFilledFromAHashSet(), "Order of site events");
+    }
+
+    /** Fill all of the empty sites of a world at once, in the order of a hash set of them, and answer the order in which the sites are then
+     *  run */
+    private List<String> runSitesFilledFromAHashSet() {
+        Toroidal2DSpace world = new TestToroidal2DSpace(Optional.empty(), 5, 5);
+        List<String> runs = new ArrayList<>();
+        new RecordingIndividual(Optional.of(world.getSubspace(2, 2)), runs);
+        EventEngine engine = new EventEngine();
+        engine.scheduleSites(world, 10.0);
+        engine.schedule(() -> {
+            for (Space site : new HashSet<>(world.getSubspaces())) {
+                if (site.isEmpty()) new RecordingIndividual(Optional.of(site), runs);
+            }
+        }, 5.0, 0.0);
+
+        engine.runUntil(50.0);
+        assertEquals(runs.size(), 6 + 24 * 4, "Sites run");
+        return runs;
+    }
+}
@@ -0,0 +1,352 @@
+package EvoEvo.york.machineMetaModel;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.*;
+
+/** Tests of the packed representation of the code of a structure */
+@Test
+public class PackedCodeTests {
+    NumberDomain _domain;
+
+    class NumberMachine extends Machine {
+        public NumberMachine(Space environment, List<Pearl> code, Domain domain) throws MetaModelException {
+            super(environment, code, domain);
+        }
+
+        @Override
+        public Structure doIt() {
+            return null;
+        }
+    }
+
+    class NumberPearl extends Pearl {
+        private int _value;
+
+        public NumberPearl(Domain domain, int value) {
+            super(domain);
+            _value = value;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return NumberPearl.class.isAssignableFrom(obj.getClass()) && _value == ((NumberPearl)obj)._value && _coding == ((NumberPearl)obj)._coding;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * _value + (_coding ? 1 : 0);
+        }
+    }
+
+    /** A domain of numbered pearls each of which is packed into a single value */
+    class NumberDomain extends Domain {
+        public NumberDomain(String name) {
+            super(name, NumberMachine.class);
+            this.setCodec(new Codec() {
+                @Override
+                public int width() {
+                    return 1;
+                }
+
+                @Override
+                public void encode(Pearl p, double[] values, int offset) {
+                    values[offset] = ((NumberPearl)p)._value;
+                }
+
+                @Override
+                public Pearl decode(double[] values, int offset) {
+                    return new NumberPearl(NumberDomain.this, (int)values[offset]);
+                }
+            });
+        }
+    }
+
+    class ConcreteSpace extends Space {
+        public ConcreteSpace(Optional<Space> container) {
+            super(container);
+        }
+    }
+
+    @BeforeMethod
+    public void setUp() {
+        _domain = new NumberDomain("Numbers");
+    }
+
+    private List<Pearl> numbers(int from, int to) {
+        List<Pearl> result = new ArrayList<>();
+        for (int i = from; i < to; i++) result.add(new NumberPearl(_domain, i));
+        return result;
+    }
+
+    @Test
+    public void structureCodeIsPackedWhenDomainHasCodec() {
+        List<Pearl> code = this.numbers(0, 10);
+        code.get(3).setCoding(false);
+        Structure s = new Structure(new ConcreteSpace(Optional.empty()), code, _domain);
+
+        assertTrue(s.getCode() instanceof PackedCode, "Code is packed");
+        assertEquals(s.getCode(), code, "Packed code equals original");
+        assertFalse(((PackedCode)s.getCode()).isCoding(3), "Non-coding pearl retained");
+    }
+
+    @Test
+    public void copyIsIndependentOfOriginal() {
+        PackedCode original = PackedCode.Pack(_domain, this.numbers(0, 10));
+        List<Pearl> copy = Domain.exactCopy(original);
+
+        assertTrue(copy instanceof PackedCode, "Copy is packed");
+        assertEquals(copy, original, "Copy is exact");
+
+        copy.set(5, new NumberPearl(_domain, 100));
+        assertEquals(original.get(5), new NumberPearl(_domain, 5), "Original unaffected by change to copy");
+        assertEquals(copy.get(5), new NumberPearl(_domain, 100), "Copy changed");
+    }
+
+    @Test
+    public void listOperationsAreRetained() {
+        PackedCode code = PackedCode.Pack(_domain, this.numbers(0, 5));
+        code.add(2, new NumberPearl(_domain, 50));
+        code.remove(0);
+        code.add(new NumberPearl(_domain, 60));
+
+        List<Pearl> expected = this.numbers(1, 2);
+        expected.add(new NumberPearl(_domain, 50));
+        expected.addAll(this.numbers(2, 5));
+        expected.add(new NumberPearl(_domain, 60));
+        assertEquals(code, expected, "Insert, remove and append");
+    }
+
+    @Test
+    public void rangesAndCodingPearls() {
+        List<Pearl> pearls = this.numbers(0, 10);
+        pearls.get(1).setCoding(false);
+        pearls.get(8).setCoding(false);
+        PackedCode source = PackedCode.Pack(_domain, pearls);
+
+        PackedCode range = new PackedCode(_domain, 0);
+        range.addRange(source, 7, 10);
+        range.addRange(source, 0, 2);
+        List<Pearl> expected = new ArrayList<>(pearls.subList(7, 10));
+        expected.addAll(pearls.subList(0, 2));
+        assertEquals(range, expected, "Ranges copied");
+
+        PackedCode coding = source.codingOnly();
+        assertEquals(coding.size(), 8, "Coding pearls only");
+        assertTrue(coding.stream().allMatch(Pearl::isCoding), "All pearls coding");
+    }
+
+    @Test
+    public void copiesShareSegmentsUntilChanged() {
+        PackedCode original = PackedCode.Pack(_domain, this.numbers(0, 1000));
+        PackedCode copy = original.copy();
+        assertEquals(copy.numSegments(), original.numSegments(), "Copy shares segments");
+
+        // Changes to either sequence after copying must not be seen by the other:
+        copy.set(500, new NumberPearl(_domain, -1));
+        original.add(new NumberPearl(_domain, 1000));
+        copy.remove(0);
+        assertEquals(original.get(500), new NumberPearl(_domain, 500), "Original unaffected by set");
+        assertEquals(original.get(0), new NumberPearl(_domain, 0), "Original unaffected by remove");
+        assertEquals(copy.size(), 999, "Copy unaffected by append");
+        assertEquals(copy.get(499), new NumberPearl(_domain, -1), "Copy changed");
+    }
+
+    /** Apply the same random edits to a packed sequence and to an ordinary list and check they always agree. Copies taken along the way
+     *  must not see any of the later edits. */
+    @Test
+    public void randomEditsAgreeWithList() {
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        List<Pearl> expected = this.numbers(0, 300);
+        PackedCode code = PackedCode.Pack(_domain, expected);
+        List<PackedCode> copies = new ArrayList<>();
+        List<List<Pearl>> expectedCopies = new ArrayList<>();
+
+        for (int i = 0; i < 2000; i++) {
+            int position = r.nextInt(expected.size());
+            switch (r.nextInt(5)) {
+                case 0:
+                    expected.set(position, new NumberPearl(_domain, i));
+                    code.set(position, new NumberPearl(_domain, i));
+                    break;
+                case 1:
+                    expected.add(position, new NumberPearl(_domain, -i));
+                    code.add(position, new NumberPearl(_domain, -i));
+                    break;
+                case 2:
+                    if (expected.size() > 10) {
+                        expected.remove(position);
+                        code.remove(position);
+                    }
+                    break;
+                case 3:
+                    // Rebuild from two ranges, as a translocation would:
+                    int finish = position + r.nextInt(expected.size() - position + 1);
+                    List<Pearl> rebuilt = new ArrayList<>(expected.subList(position, finish));
+                    rebuilt.addAll(expected.subList(0, position));
+                    PackedCode rebuiltCode = new PackedCode(_domain, 0);
+                    rebuiltCode.addRange(code, position, finish);
+                    rebuiltCode.addRange(code, 0, position);
+                    if (!rebuilt.isEmpty()) {
+                        expected = rebuilt;
+                        code = rebuiltCode;
+                    }
+                    break;
+                default:
+                    copies.add(code);
+                    expectedCopies.add(new ArrayList<>(expected));
+                    code = code.copy();
+                    break;
+            }
+        }
+        assertEquals(code, expected, "Packed and list edits agree");
+        assertEquals(copies, expectedCopies, "Copies unaffected by later edits");
+    }
+
+    @Test
+    public void codingViewShowsOnlyCodingPearlsAndCopiesOnWrite() {
+        List<Pearl> pearls = this.numbers(0, 200);
+        for (int i = 0; i < 200; i += 3) pearls.get(i).setCoding(false);
+        PackedCode source = PackedCode.Pack(_domain, pearls);
+
+        CodingView view = source.codingView();
+        List<Pearl> expected = new ArrayList<>();
+        pearls.stream().filter(Pearl::isCoding).forEach(expected::add);
+        assertEquals(view, expected, "View holds the coding pearls");
+
+        // Changing the source after the view was made is not seen by the view:
+        source.set(1, new NumberPearl(_domain, -1));
+        assertEquals(view.get(0), new NumberPearl(_domain, 1), "View unaffected by change to source");
+
+        // Changing the view changes a copy, not the source:
+        view.set(0, new NumberPearl(_domain, -2));
+        view.remove(1);
+        assertEquals(view.get(0), new NumberPearl(_domain, -2), "View changed");
+        assertEquals(view.size(), expected.size() - 1, "View shortened");
+        assertEquals(source.size(), 200, "Source unchanged");
+    }
+
+    @Test
+    public void transcriptionOfPackedCodeIsAViewOfTheCodingPearls() {
+        List<Pearl> pearls = this.numbers(0, 10);
+        pearls.get(4).setCoding(false);
+        Structure s = new Structure(new ConcreteSpace(Optional.empty()), pearls, _domain);
+
+        Structure unit = new Transcriber(new ConcreteSpace(Optional.empty()), new ArrayList<>(), new NumberDomain("Transcribers")).transcribe(s);
+        assertTrue(unit.getCode() instanceof CodingView, "Transcription unit is a view");
+        assertEquals(unit.size(), 9, "Transcription unit has only coding pearls");
+        assertEquals(s.size(), 10, "Source unchanged");
+    }
+
+    @Test
+    public void lociStartAtPromoters() {
+        // Every tenth number is a promoter:
+        _domain.setPromoter(p -> ((NumberPearl)p)._value % 10 == 0);
+        List<Pearl> pearls = this.numbers(5, 35);
+        pearls.get(7).setCoding(false);
+        Structure s = new Structure(new ConcreteSpace(Optional.empty()), pearls, _domain);
+
+        List<Locus> loci = s.getLoci();
+        assertEquals(loci.size(), 3, "Number of loci");
+        assertEquals(loci.get(0), new Locus(5, 15), "First locus");
+        assertEquals(loci.get(2), new Locus(25, 30), "Last locus runs to end of code");
+
+        // Transcribing a locus answers just its coding pearls:
+        Transcriber t = new Transcriber(new ConcreteSpace(Optional.empty()), new ArrayList<>(), new NumberDomain("Transcribers"));
+        Structure unit = t.transcribe(s, loci.get(0));
+        assertEquals(unit.size(), 9, "Transcription unit has only coding pearls of locus");
+        assertEquals(unit.getCode().get(0), new NumberPearl(_domain, 10), "Transcription unit starts at promoter");
+
+        // The loci of a mutated copy reflect the mutations:
+        List<Pearl> mutated = Domain.exactCopy(s.getCode());
+        mutated.set(1, new NumberPearl(_domain, 100));
+        mutated.remove(20);
+        Structure copy = new Structure(new ConcreteSpace(Optional.empty()), mutated, _domain);
+        assertEquals(copy.getLoci(), Arrays.asList(new Locus(1, 5), new Locus(5, 15), new Locus(15, 24), new Locus(24, 29)), "Loci of mutated copy");
+        assertEquals(s.getLoci(), loci, "Loci of original unchanged");
+    }
+
+    @Test
+    public void fingerprintsDependOnlyOnCodingPearls() {
+        List<Pearl> pearls = this.numbers(0, 100);
+        pearls.get(10).setCoding(false);
+        PackedCode code = PackedCode.Pack(_domain, pearls);
+        Fingerprint f = Fingerprint.Of(_domain, code);
+
+        // The same coding pearls however held, and whatever non-coding pearls lie between them, have the same fingerprint:
+        assertEquals(Fingerprint.Of(_domain, pearls), f, "Unpacked code");
+        assertEquals(Fingerprint.Of(_domain, code.codingView()), f, "View of coding pearls");
+        PackedCode changed = code.copy();
+        Pearl nonCoding = new NumberPearl(_domain, -1);
+        nonCoding.setCoding(false);
+        changed.set(10, nonCoding);
+        assertEquals(Fingerprint.Of(_domain, changed), f, "Changed non-coding pearl");
+
+        changed.set(11, new NumberPearl(_domain, -1));
+        assertNotEquals(Fingerprint.Of(_domain, changed), f, "Changed coding pearl");
+        assertNotEquals(Fingerprint.Of(new NumberDomain("Other numbers"), code), f, "Other domain");
+    }
+
+    @Test
+    public void fitnessCacheEvaluatesEachFingerprintOnceAndForgetsLeastRecentlyUsed() {
+        FitnessCache cache = new FitnessCache(2);
+        Fingerprint f1 = Fingerprint.Of(_domain, this.numbers(0, 5));
+        Fingerprint f2 = Fingerprint.Of(_domain, this.numbers(1, 5));
+        Fingerprint f3 = Fingerprint.Of(_domain, this.numbers(2, 5));
+
+        assertEquals(cache.computeIfAbsent(f1, () -> 1.0), 1.0, "First evaluation");
+        assertEquals(cache.computeIfAbsent(f1, () -> -1.0), 1.0, "Cached value");
+        cache.put(f2, 2.0);
+        cache.get(f1);
+        cache.put(f3, 3.0);
+        assertFalse(cache.get(f2).isPresent(), "Least recently used value forgotten");
+        assertTrue(cache.get(f1).isPresent(), "Recently used value kept");
+        assertEquals(cache.size(), 2, "Size bounded");
+        assertEquals(cache.getHits(), 3, "Hits");
+        assertEquals(cache.getMisses(), 2, "Misses");
+    }
+
+    @Test
+    public void translatedMachinesAreCompiledOnce() {
+        AtomicInteger compilations = new AtomicInteger(0);
+        NumberDomain summing = new NumberDomain("Summed numbers") {
+            @Override
+            public Optional<Object> compile(List<Pearl> code) {
+                compilations.incrementAndGet();
+                return Optional.of(Arrays.stream(this.packedValues(code)).sum());
+            }
+        };
+        summing.setMachineFactory((environment, code, domain) -> new NumberMachine(environment, code, domain));
+        List<Pearl> pearls = new ArrayList<>();
+        for (int i = 0; i < 10; i++) pearls.add(new NumberPearl(summing, i));
+        pearls.get(9).setCoding(false);
+        Space space = new ConcreteSpace(Optional.empty());
+        Structure s = new Structure(space, pearls, summing);
+
+        Transcriber t = new Transcriber(space, new ArrayList<>(), new NumberDomain("Transcribers"));
+        Translator tu = new Translator(space, new ArrayList<>(), new NumberDomain("Translators"));
+        Machine m = tu.translate(t.transcribe(s), space);
+        assertTrue(m.isCompiled(), "Compiled when translated");
+        assertEquals(m.getPhenotype().get(), 36.0, "Compiled from the coding pearls");
+        assertEquals(compilations.get(), 1, "Compiled once");
+
+        // Changing the code of the machine means it's compiled again when next needed:
+        m.setCode(pearls.subList(0, 3));
+        assertFalse(m.isCompiled(), "Not compiled after change");
+        assertEquals(m.getPhenotype().get(), 3.0, "Compiled again");
+    }
+
+    @Test(expectedExceptions = MetaModelException.class)
+    public void pearlsMustBeFromTheSameDomain() {
+        PackedCode code = PackedCode.Pack(_domain, this.numbers(0, 3));
+        code.add(new NumberPearl(new NumberDomain("Other numbers"), 3));
+    }
+}
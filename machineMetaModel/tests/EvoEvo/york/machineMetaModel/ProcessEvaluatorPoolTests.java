@@ -0,0 +1,70 @@
+package EvoEvo.york.machineMetaModel;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.testng.Assert.*;
+
+/** Tests of the pool of worker processes that evaluate fitness */
+@Test
+public class ProcessEvaluatorPoolTests {
+    /** A worker process for the evaluator pool test that answers the sum of the packed values it's sent */
+    public static class SummingWorker {
+        public static void main(String[] args) throws Exception {
+            EvaluatorWorker.Serve(Integer.parseInt(args[0]), Integer.parseInt(args[1]), values -> Arrays.stream(values).sum());
+        }
+    }
+
+    @Test
+    public void evaluatorPoolWorkersAnswerInBatchesAndAreRestarted() throws Exception {
+        List<String> command = Arrays.asList(System.getProperty("java.home") + "/bin/java", "-classpath", System.getProperty("java.class.path"),
+                                             SummingWorker.class.getName());
+        try (ProcessEvaluatorPool pool = new ProcessEvaluatorPool(command, 2, 8, 2)) {
+            this.assertPoolSums(pool, 100);
+
+            // A worker that dies is restarted and its requests are answered by it or by the other worker:
+            pool.getProcess(0).destroyForcibly().waitFor();
+            this.assertPoolSums(pool, 100);
+        }
+    }
+
+    /** A worker process for the evaluator pool test that dies when it's sent a negative value */
+    public static class FragileWorker {
+        public static void main(String[] args) throws Exception {
+            EvaluatorWorker.Serve(Integer.parseInt(args[0]), Integer.parseInt(args[1]), values -> {
+                if (Arrays.stream(values).anyMatch(v -> v < 0)) Runtime.getRuntime().halt(1);
+                return Arrays.stream(values).sum();
+            });
+        }
+    }
+
+    @Test
+    public void evaluatorPoolFailsARequestThatKeepsKillingWorkers() throws Exception {
+        List<String> command = Arrays.asList(System.getProperty("java.home") + "/bin/java", "-classpath", System.getProperty("java.class.path"),
+                                             FragileWorker.class.getName());
+        try (ProcessEvaluatorPool pool = new ProcessEvaluatorPool(command, 1, 8, 2)) {
+            CompletableFuture<Double> poison = pool.evaluate(new double[]{-1, 1});
+            this.assertPoolSums(pool, 20);
+            try {
+                poison.join();
+                fail("Request that kills its worker answered");
+            } catch (CompletionException e) {
+                assertTrue(e.getCause() instanceof MetaModelException, "Request failed");
+            }
+
+            // The worker is still there for other requests:
+            this.assertPoolSums(pool, 20);
+        }
+    }
+
+    private void assertPoolSums(FitnessEvaluator pool, int numRequests) {
+        List<CompletableFuture<Double>> results = new ArrayList<>();
+        for (int i = 0; i < numRequests; i++) results.add(pool.evaluate(new double[]{i, i, 1}));
+        for (int i = 0; i < numRequests; i++) assertEquals(results.get(i).join(), 2.0 * i + 1, "Sum of packed values");
+    }
+}
@@ -0,0 +1,28 @@
+package EvoEvo.york.tspTest;
+
+import EvoEvo.york.machineMetaModel.Domain;
+import EvoEvo.york.machineMetaModel.Pearl;
+
+/** The codec that packs a City into a single value: its index in the list of cities held by its domain. */
+class CityCodec implements Domain.Codec {
+    private final CityType _domain;
+
+    CityCodec(CityType domain) {
+        _domain = domain;
+    }
+
+    @Override
+    public int width() {
+        return 1;
+    }
+
+    @Override
+    public void encode(Pearl p, double[] values, int offset) {
+        values[offset] = _domain.indexOf((City)p);
+    }
+
+    @Override
+    public Pearl decode(double[] values, int offset) {
+        return _domain.cityAt((int)values[offset]).klone();
+    }
+}
@@ -1,8 +1,14 @@
 package EvoEvo.york.tspTest;
 
 import EvoEvo.york.machineMetaModel.Domain;
+import EvoEvo.york.machineMetaModel.FitnessCache;
+import EvoEvo.york.machineMetaModel.Pearl;
+import EvoEvo.york.machineMetaModel.Simulation;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -11,6 +17,13 @@ public class CityType extends Domain {
     /** The range of this map is the set of Cities that are members of this domain. The keys of the map are the names of the cities. */
     private Map<String, City> _cities = new HashMap<>();
 
+    /** The cities of this domain in the order in which they were added. The position of a city in this list is the value by which it is
+     *  packed. */
+    private List<City> _cityList = new ArrayList<>();
+
+    /** The position of each city in _cityList, keyed by the city's name */
+    private Map<String, Integer> _cityIndices = new HashMap<>();
+
     /** Local class that remembers a pair of cities so that the distance between them can be retained */
     class CityPair {
         City _a;
@@ -39,18 +52,31 @@ public class CityType extends Domain {
     /** The distances between pairs of cities */
     private Map<CityPair, Double> _distances;
 
+    /** The same distances, indexed by the positions of the cities in _cityList, with NaN where there is no distance. Built when first needed
+     *  and forgotten whenever a city or distance is added. */
+    private volatile double[][] _distanceMatrix;
+
     /** Construct the domain instance and set up the list of allowed cities. This domain just knows the type of machine that it codes for:
      *  the TSPCalculator machine. */
     public CityType(String name) {
         super(name, TSPCalculator.class);
 
         _distances = new HashMap<>();
+        this.setCodec(new CityCodec(this));
+        this.setMachineFactory(TSPCalculator::new);
+
+        // Identical code is evaluated only once if the simulation asks for a fitness cache:
+        int cacheSize = Simulation.GetValue("fitnessCacheSize", 0);
+        if (cacheSize > 0) this.setFitnessCache(new FitnessCache(cacheSize));
     }
 
     /** Add a city to this domain */
     public City addCity(String name) {
         City result = new City(name, this);
         _cities.put(name, result);
+        _cityIndices.put(name, _cityList.size());
+        _cityList.add(result);
+        _distanceMatrix = null;
         return result;
     }
 
@@ -63,18 +89,80 @@ public class CityType extends Domain {
                                              .findFirst();
         if (!found.isPresent())
             _distances.put(pair, distance);
+        _distanceMatrix = null;
     }
 
     /** Answer the time taken to transition between the two given cities */
     public double journeyTime(City from, City to) {
-        CityPair p = new CityPair(from, to);
-        return _distances
-                       .entrySet()
-                       .stream()
-                       .filter(e -> e.getKey().equals(p))
-                       .findFirst()
-                       .map(e -> e.getValue())
-                       .get();
+        return this.journeyTime(this.indexOf(from), this.indexOf(to), this.distances());
+    }
+
+    /** Answer the time taken to transition between the cities at the given positions, using the supplied distance matrix */
+    double journeyTime(int from, int to, double[][] distances) {
+        double result = distances[from][to];
+        if (Double.isNaN(result)) throw new TSPTestException(String.format("No distance between %s and %s", this.cityAt(from), this.cityAt(to)));
+        return result;
+    }
+
+    /** Answer the matrix of distances between the cities of this domain, indexed by their positions, building it if need be */
+    double[][] distances() {
+        double[][] result = _distanceMatrix;
+        if (result == null) {
+            synchronized (this) {
+                int size = _cityList.size();
+                result = new double[size][size];
+                for (double[] row : result) Arrays.fill(row, Double.NaN);
+                for (Map.Entry<CityPair, Double> e : _distances.entrySet()) {
+                    int a = this.indexOf(e.getKey()._a);
+                    int b = this.indexOf(e.getKey()._b);
+                    result[a][b] = e.getValue();
+                    result[b][a] = e.getValue();
+                }
+                _distanceMatrix = result;
+            }
+        }
+        return result;
+    }
+
+    /** Answer the time of the journey around the route, given as the positions of its cities, returning to the first, but give up as soon as it
+     *  reaches the cutoff, answering the time of the legs added up so far */
+    double journeyTimeWithin(int[] route, double cutoff) {
+        if (route.length == 0 || route.length == 1) throw new RuntimeException("Degenerate route in journey");
+        double[][] distances = this.distances();
+        double result = 0;
+        int start = route[0];
+        int last = start;
+        for (int i = 1; i < route.length; i++) {
+            int next = route[i];
+            result += this.journeyTime(last, next, distances);
+            if (result >= cutoff) return result;
+            last = next;
+        }
+        return result + this.journeyTime(last, start, distances);
+    }
+
+    /** Answer the journey time of a TSPCalculator whose code is packed into the given values. This is what a fitness evaluator in another
+     *  process calculates for the calculator. */
+    public double journeyTimeOf(double[] packedCode) {
+        return this.journeyTimeWithin(Arrays.stream(packedCode).mapToInt(v -> (int)v).toArray(), Double.POSITIVE_INFINITY);
+    }
+
+    /** A TSPCalculator is compiled into its route: the positions of its cities, in order */
+    @Override
+    public Optional<Object> compile(List<Pearl> code) {
+        return Optional.of(Arrays.stream(this.packedValues(code)).mapToInt(v -> (int)v).toArray());
+    }
+
+    /** Answer the position of the supplied city in the list of cities of this domain */
+    int indexOf(City city) {
+        Integer result = _cityIndices.get(city.getName());
+        if (result == null) throw new TSPTestException("Unknown city: " + city.getName());
+        return result;
+    }
+
+    /** Answer the city at the given position in the list of cities of this domain */
+    City cityAt(int index) {
+        return _cityList.get(index);
     }
 
     /** Find a specific named city, used for testing
@@ -10,7 +10,6 @@ import EvoEvo.york.machineMetaModel.Site;
 import EvoEvo.york.machineMetaModel.Space;
 
 import java.util.Optional;
-import java.util.Set;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -47,27 +46,13 @@ public class Journey extends Individual {
         }
 
         // First of all check to see if we should just commit suicide:
-        int runCount = site.getRunCount();
-        boolean shouldDie = false;
-        if (Simulation.GetValue("programmedDeath", true)) {
-            if (Simulation.GetValue("deathByOldAge", true)) {
-                shouldDie = runCount > max(Simulation.GetValue("minRunCount", 400),
-                                           Simulation.GetValue("replicationMultiplier", 0) * _replicationCount);
-            } else {
-                double suicideProbability = 1.0 / Simulation.GetValue("minRunCount", 600.0);
-                shouldDie = ThreadLocalRandom.current().nextDouble() < suicideProbability;
-            }
-        }
-
-        if (shouldDie) {
+        if (this.isDueToDie(site.getRunCount())) {
             if (_logger.isLoggable(Level.FINE))
                 _logger.fine(String.format("{%d} Committing suicide: %s", System.currentTimeMillis(), site));
             site.empty();
         } else {
             // As we're still here, look to see if there's  a suitable site that we'd like spread our seed into:
-            Set<Space> emptySites = ((Site)(_container.get())).emptyNeighbours();
-            Optional<Space> neighbour = emptySites.parallelStream()
-                                                  .findAny();
+            Optional<Space> neighbour = site.anyEmptyNeighbour();
             if (neighbour.isPresent()) {
                 if (_logger.isLoggable(Level.FINEST)) {
                     _logger.finest(String.format("{%d} Found empty neighbour in %s", System.currentTimeMillis(), site));
@@ -80,12 +65,36 @@ public class Journey extends Individual {
         }
     }
 
+    /** True if the journey should die now, its site having been run the given number of times */
+    /* package private */ boolean isDueToDie(int runCount) {
+        if (!Simulation.GetValue("programmedDeath", true)) return false;
+        if (Simulation.GetValue("deathByOldAge", true)) {
+            return runCount > max(Simulation.GetValue("minRunCount", 400),
+                                  Simulation.GetValue("replicationMultiplier", 0) * this.getReplicationCount());
+        } else {
+            double suicideProbability = 1.0 / Simulation.GetValue("minRunCount", 600.0);
+            return ThreadLocalRandom.current().nextDouble() < suicideProbability;
+        }
+    }
+
     @Override
     public int compareTo(Individual o) {
         if (!Journey.class.isAssignableFrom(o.getClass())) throw new MetaModelException(String.format("Cannot compare individual of type %s with one of type %s", o.getClass(), Journey.class));
 
-        Journey j = (Journey)o;
-        return this.journeyTime().compareTo(j.journeyTime());
+        return Double.compare(this.fitnessKey(), o.fitnessKey());
+    }
+
+    /** The fitness key of a journey is its journey time, the shortest journey being the fittest */
+    @Override
+    protected double calculateFitnessKey() {
+        return this.journeyTime();
+    }
+
+    /** The journey time can be added up leg by leg, stopping as soon as it reaches the cutoff */
+    @Override
+    protected double calculateFitnessKey(double cutoff) {
+        TSPCalculator calculatorMachine = (TSPCalculator)this.locateMachine(TSPCalculator.class);
+        return calculatorMachine.journeyTimeWithin(cutoff);
     }
 
     @Override
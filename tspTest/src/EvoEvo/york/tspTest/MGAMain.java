@@ -39,11 +39,13 @@ public class MGAMain {
         }
         _Logger.info("Initial population: " + Simulation.GetValue("numMGAJourneys"));
 
+        // Run this many tournaments in parallel for each search, if any, rather than one at a time:
+        int numTournaments = Simulation.GetValue("parallelTournaments", 0);
         Journey best;
         long time = System.currentTimeMillis();
         int searchCount = 0;
         do {
-            best = (Journey)world.search().get();
+            best = (Journey)(numTournaments > 0 ? world.search(numTournaments) : world.search()).get();
             if (searchCount++ % 100 == 0) {
                 System.out.printf("Best of %d is: %s%n", world.numSubspaces(), best);
             }
@@ -2,12 +2,10 @@ package EvoEvo.york.tspTest;
 
 import EvoEvo.york.machineMetaModel.*;
 
+import java.util.Collections;
 import java.util.Optional;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
 public class Main {
     private static Logger _Logger = Logger.getLogger("EvoEvo");
@@ -120,22 +118,38 @@ public class Main {
         }
 
 
-        // Create scheduled executor and give it all the sites in the world to look after:
-        ScheduledExecutorService executor = Executors.newScheduledThreadPool(Simulation.GetValue("numThreads", 20));
-        world.getSubspaces().forEach((s) -> executor.scheduleWithFixedDelay((Journey2DSite)s,
-                                                                            0,
-                                                                            Simulation.GetValue("siteExecutionDelayInMicroseconds", 100),
-                                                                            TimeUnit.MICROSECONDS));
+        Optional<Individual> best;
+        if (Simulation.GetValue("synchronousUpdate", false)) {
+            best = RunSynchronously(world);
+        } else if (Simulation.GetValue("eventDriven", false)) {
+            best = RunEventDriven(world);
+        } else {
+            best = RunAsynchronously(world);
+        }
+
+        Machine.FlushLogger();
+        _Logger.info(String.format("{%d} Completed, best is %s", System.currentTimeMillis(), best.get().getContainer().get()));
+        Machine.FlushLogger();
 
-        // Allow the world itself to be run and retain a Future object so we can see how it's getting on:
-        ScheduledFuture result = executor.scheduleWithFixedDelay(world,
-                                                                 0,
-                                                                 Simulation.GetValue("worldExecutionDelayInMicroseconds", 50),
-                                                                 TimeUnit.MICROSECONDS);
+        System.out.println("Best: " + best);
+    }
 
-        Optional<Individual> best;
+    /** Run each site of the world, and the world itself, over and over on the "siteExecutor" backend until the target time is reached or
+     *  time runs out. The rate at which sites were run is reported at the end, so that the backends can be compared. */
+    private static Optional<Individual> RunAsynchronously(ToroidalTSP2DSpace world) {
+        SiteExecutor.Backend backend = SiteExecutor.Backend.valueOf(Simulation.GetValue("siteExecutor", SiteExecutor.Backend.SCHEDULED.name()).toUpperCase());
+        SiteExecutor executor = SiteExecutor.Create(backend, Simulation.GetValue("numThreads", 20));
         long time = System.currentTimeMillis();
 
+        // Give the executor all the sites in the world to look after, and then the world itself:
+        executor.execute(world.getSubspaces()
+                              .stream()
+                              .map(s -> (Journey2DSite)s)
+                              .collect(Collectors.toList()),
+                         Simulation.GetValue("siteExecutionDelayInMicroseconds", 100));
+        executor.execute(Collections.singletonList(world), Simulation.GetValue("worldExecutionDelayInMicroseconds", 50));
+
+        Optional<Individual> best;
         do {
             try {
                 Thread.sleep(Simulation.GetValue("reportingDelayInMilliseconds", 100));
@@ -155,25 +169,61 @@ public class Main {
                  &&
                  System.currentTimeMillis() < (time + Simulation.GetValue("totalRunTimeInMilliseconds", 60000))
                  &&
-                 !result.isDone());
+                 !executor.getFailure(world).isPresent());
+
+        // If the world stopped being run then nothing more can happen, so say why:
+        executor.getFailure(world).ifPresent(e -> e.printStackTrace());
+        executor.close();
+        long elapsed = Math.max(1, System.currentTimeMillis() - time);
+        System.out.println(String.format("%s executor ran %d tasks in %d ms: %.0f runs per second",
+                                         backend, executor.getNumRuns(), elapsed, executor.getNumRuns() * 1000.0 / elapsed));
+        return best;
+    }
 
-        if (result.isDone()) {
-            try {
-                Object r = result.get();
-                System.out.println("result is " + r);
-            } catch (Exception e) {
-                e.printStackTrace();
+    /** Update all of the sites of the world together, a step at a time, until the target time is reached or time runs out */
+    private static Optional<Individual> RunSynchronously(ToroidalTSP2DSpace world) {
+        Optional<Individual> best;
+        long time = System.currentTimeMillis();
+        int step = 0;
+
+        do {
+            for (int i = 0; i < Simulation.GetValue("stepsPerReport", 10); i++, step++) world.synchronousStep();
+            best = world.best();
+            if (best.isPresent()) {
+                System.out.println(String.format("Best of %d after %d steps is: %s", world.numIndividuals(), step, best.get().getContainer().get()));
+            } else {
+                System.out.println(String.format("Best of %d after %d steps is: nobody", world.numIndividuals(), step));
             }
-        }
-        executor.shutdownNow();
-        try {
-            executor.awaitTermination(5, TimeUnit.SECONDS);
-        } catch (InterruptedException e) {}
+        } while ((best.isPresent() ? ((Journey)(best.get())).journeyTime() : 10000000) > Simulation.GetValue("targetTime", 35500)
+                 &&
+                 System.currentTimeMillis() < (time + Simulation.GetValue("totalRunTimeInMilliseconds", 60000)));
+        return best;
+    }
 
-        Machine.FlushLogger();
-        _Logger.info(String.format("{%d} Completed, best is %s", System.currentTimeMillis(), best.get().getContainer().get()));
-        Machine.FlushLogger();
+    /** Run the sites of the world, and the world itself, as events on a virtual clock, with the site and world delays and the reporting
+     *  interval as times on that clock, until the target time is reached or time runs out. */
+    private static Optional<Individual> RunEventDriven(ToroidalTSP2DSpace world) {
+        EventEngine engine = new EventEngine();
+        engine.scheduleSites(world, Simulation.GetValue("siteExecutionDelayInMicroseconds", 100));
+        engine.schedule(world, 0.0, Simulation.GetValue("worldExecutionDelayInMicroseconds", 50));
 
-        System.out.println("Best: " + best);
+        Optional<Individual> best;
+        long time = System.currentTimeMillis();
+        do {
+            engine.runUntil(engine.getTime() + Simulation.GetValue("reportingDelayInMilliseconds", 100) * 1000.0);
+            best = world.best();
+            if (best.isPresent()) {
+                System.out.println(String.format("Best of %d at %.0f us is: %s", world.numIndividuals(), engine.getTime(), best.get().getContainer().get()));
+            } else {
+                System.out.println(String.format("Best of %d at %.0f us is: nobody", world.numIndividuals(), engine.getTime()));
+            }
+        } while ((best.isPresent() ? ((Journey)(best.get())).journeyTime() : 10000000) > Simulation.GetValue("targetTime", 35500)
+                 &&
+                 System.currentTimeMillis() < (time + Simulation.GetValue("totalRunTimeInMilliseconds", 60000)));
+
+        long elapsed = Math.max(1, System.currentTimeMillis() - time);
+        System.out.println(String.format("Event engine ran %d events in %d ms: %.0f events per second",
+                                         engine.getNumEventsRun(), elapsed, engine.getNumEventsRun() * 1000.0 / elapsed));
+        return best;
     }
 }
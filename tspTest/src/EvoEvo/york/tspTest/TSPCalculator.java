@@ -1,6 +1,9 @@
 package EvoEvo.york.tspTest;
 
 import EvoEvo.york.machineMetaModel.Domain;
+import EvoEvo.york.machineMetaModel.FitnessCache;
+import EvoEvo.york.machineMetaModel.FitnessEvaluator;
+import EvoEvo.york.machineMetaModel.Fingerprint;
 import EvoEvo.york.machineMetaModel.Machine;
 import EvoEvo.york.machineMetaModel.MetaModelException;
 import EvoEvo.york.machineMetaModel.Space;
@@ -24,23 +27,61 @@ public class TSPCalculator extends Machine {
     /** In the context of this particular machine, doIt is overridden to calculate the journey time around the defined list of cities. */
     @Override
     public Structure doIt() {
-        if (_code.size() == 0 || _code.size() == 1) throw new RuntimeException("Degenerate route in journey");
-        double result = 0;
-        City start = (City)_code.get(0);
-        CityType type = (CityType)start.getDomain();
-        City last = start;
-        for (int i = 1; i < _code.size(); i++) {
-            City next = (City)_code.get(i);
-            result += type.journeyTime(last, next);
-            last = next;
-        }
-        result += type.journeyTime(last, start);
-        _journeyTime = Optional.of(result);
+        this.evaluateWithin(Double.POSITIVE_INFINITY);
         return this;
     }
 
+    /** Calculate the journey time around the route compiled from the defined list of cities, but give up as soon as it reaches the cutoff.
+     *  If the calculation completes then the journey time is remembered and answered. Otherwise the answer is the time of the legs added up
+     *  so far: an amount, at least the cutoff, that the journey time is known to be no less than. */
+    private double evaluateWithin(double cutoff) {
+        double result = ((CityType)_domain).journeyTimeWithin((int[])this.getPhenotype().get(), cutoff);
+        if (result < cutoff) _journeyTime = Optional.of(result);
+        return result;
+    }
+
+    /** Answer the journey time of the receiver if it's less than the cutoff. If not, answer an amount of at least the cutoff that the journey
+     *  time is known to be no less than, which may be found without adding up every leg. Only a complete calculation is remembered or cached. */
+    public double journeyTimeWithin(double cutoff) {
+        if (_journeyTime.isPresent()) return _journeyTime.get();
+        if (_domain.getFitnessEvaluator().isPresent()) return this.getJourneyTime();
+
+        Optional<FitnessCache> cache = _domain.getFitnessCache();
+        if (!cache.isPresent()) return this.evaluateWithin(cutoff);
+
+        Fingerprint key = Fingerprint.Of(_domain, _code);
+        Optional<Double> cached = cache.get().get(key);
+        if (cached.isPresent()) {
+            _journeyTime = cached;
+            return cached.get();
+        }
+        double result = this.evaluateWithin(cutoff);
+        if (_journeyTime.isPresent()) cache.get().put(key, _journeyTime.get());
+        return result;
+    }
+
+    /** Answer the journey time of the receiver, calculating it if need be. If the domain caches fitness then the time of a route that's
+     *  already been calculated is not calculated again, and if the domain has a fitness evaluator then that does the calculation. */
     public Double getJourneyTime() {
-        if (!_journeyTime.isPresent()) this.doIt();
+        if (!_journeyTime.isPresent()) {
+            Optional<FitnessCache> cache = _domain.getFitnessCache();
+            if (cache.isPresent()) {
+                _journeyTime = Optional.of(cache.get().computeIfAbsent(Fingerprint.Of(_domain, _code), this::evaluate));
+            } else {
+                this.evaluate();
+            }
+        }
+        return _journeyTime.get();
+    }
+
+    /** Calculate and answer the receiver's journey time, here or, if the domain has one, with its fitness evaluator */
+    private double evaluate() {
+        Optional<FitnessEvaluator> evaluator = _domain.getFitnessEvaluator();
+        if (evaluator.isPresent()) {
+            _journeyTime = Optional.of(evaluator.get().evaluate(_domain.packedValues(_code)).join());
+        } else {
+            this.doIt();
+        }
         return _journeyTime.get();
     }
 
@@ -83,13 +83,13 @@ public class TSPConcreteSpace extends ElitistSpace {
     private void updateBest(Journey journey) {
         if (!_best.isPresent())
             _best = Optional.of(journey);
-        else if (_best.get().compareTo(journey) > 0) {
+        else if (_best.get().fitnessKey() > journey.fitnessKey()) {
             _best = Optional.of(journey);
         }
 
         if (!_worst.isPresent())
             _worst = Optional.of(journey);
-        else if (_worst.get().compareTo(journey) < 0) {
+        else if (_worst.get().fitnessKey() < journey.fitnessKey()) {
             _worst = Optional.of(journey);
         }
     }
@@ -12,6 +12,10 @@ import java.util.stream.Collectors;
 public class ToroidalTSP2DSpace extends Toroidal2DSpace implements SearchableSpace {
     private final static Logger _logger = Logger.getLogger("EvoEvo");
 
+    /** Orders sites as the cells of the space are ordered, so that replications are carried out in the same order in every run */
+    private final static Comparator<Toroid2DSite> _CellOrder = Comparator.comparingInt(Toroid2DSite::getXPosition)
+                                                                         .thenComparingInt(Toroid2DSite::getYPosition);
+
     /** The set of sites that individuals would like to replicate into */
     private Set<Toroid2DSite> _replications;
 
@@ -27,7 +31,7 @@ public class ToroidalTSP2DSpace extends Toroidal2DSpace implements SearchableSpa
             }
         }
 
-        _replications = new HashSet<>();
+        _replications = new TreeSet<>(_CellOrder);
     }
 
     /** Search around the toroidal space looking for the currently best solution */
@@ -37,13 +41,10 @@ public class ToroidalTSP2DSpace extends Toroidal2DSpace implements SearchableSpa
 
         // Look at all cells and, if they're empty, allow the "best" of the neighbours to replicate into it.
         // First find all the empty cells
-        Set<Space> emptyCells = this.getSubspaces()
-                                    .parallelStream()
-                                    .filter((s) -> s.isEmpty())
-                                    .collect(Collectors.toCollection(HashSet::new));
+        List<Space> emptyCells = this.emptySites();
 
-        // For each empty cell, find its neighbours build up a collection of journeys to replicate:
-        _replicants = new HashMap<>();
+        // For each empty cell, find its neighbours build up a collection of journeys to replicate, in cell order:
+        _replicants = new TreeMap<>(_CellOrder);
         emptyCells.parallelStream()
                   .forEach((s) -> findReplications((Journey2DSite)s));
 
@@ -56,6 +57,49 @@ public class ToroidalTSP2DSpace extends Toroidal2DSpace implements SearchableSpa
         return this.best();
     }
 
+    /** Update every site in the space once, synchronously, as a cellular automaton rather than by running each site as a task of its own.
+     *  Every site is updated from the state of the space when the step began: the empty sites are filled from the neighbours occupied then,
+     *  so a journey born during the step doesn't replicate until the next, and only after that are the journeys that were there aged. The
+     *  sites are updated in tiles of "tileSize" cells across, in parallel where the tiles share no neighbours, so no locks are needed and the
+     *  outcome doesn't depend on the order in which threads happen to run. */
+    public void synchronousStep() {
+        int tileSize = Simulation.GetValue("tileSize", 16);
+        long[] occupancy = this.occupancy();
+        this.updateInTiles(tileSize, s -> this.fillSite((Journey2DSite)s, occupancy));
+        this.updateInTiles(tileSize, s -> this.ageSite((Journey2DSite)s, occupancy));
+    }
+
+    /** If the site was empty when the step began, fill it with a replicant of the fittest of the neighbours that were occupied then, the
+     *  first in the neighbour table winning a tie. */
+    private void fillSite(Journey2DSite site, long[] occupancy) {
+        int x = site.getXPosition();
+        int y = site.getYPosition();
+        if (this.wasOccupied(x, y, occupancy)) return;
+
+        Optional<Individual> fittest = this.fittestNeighbour(x, y, this.occupiedNeighbours(x, y, occupancy));
+        if (fittest.isPresent()) this.replicateInto(site, fittest.get());
+    }
+
+    /** Answer the fittest of the occupants of the neighbours of position (x,y) whose bits are set in the supplied mask, the first in the
+     *  neighbour table winning a tie, so that the choice doesn't depend on the order of a set of neighbours. */
+    private Optional<Individual> fittestNeighbour(int x, int y, long mask) {
+        Individual fittest = null;
+        for (int n = 0; n < this.numNeighbours(); n++) {
+            if ((mask & (1L << n)) == 0) continue;
+            Individual candidate = (Individual)this.getNeighbour(x, y, n).getASubspace();
+            if (fittest == null || Individual.CompareFitness(candidate, fittest) < 0) fittest = candidate;
+        }
+        return Optional.ofNullable(fittest);
+    }
+
+    /** If the site was occupied when the step began, age its occupant, which may die */
+    private void ageSite(Journey2DSite site, long[] occupancy) {
+        if (!this.wasOccupied(site.getXPosition(), site.getYPosition(), occupancy)) return;
+
+        site.incRunCount();
+        if (((Journey)site.getASubspace()).isDueToDie(site.getRunCount())) site.empty();
+    }
+
     /** Register the notion that the given Site is a suitable target for replication */
     @Override
     public synchronized void replicationRequest(Site source, Site destination) {
@@ -76,22 +120,20 @@ public class ToroidalTSP2DSpace extends Toroidal2DSpace implements SearchableSpa
             Set<Toroid2DSite> targets;
             synchronized (this) {
                 targets = _replications;
-                _replications = new HashSet<>();
+                _replications = new TreeSet<>(_CellOrder);
             }
             for (Toroid2DSite destination : targets) {
                 if (destination.isEmpty()) {
-                    Optional<Space> best;
+                    Optional<Individual> best;
                     try {
-                        Set<Space> neighbours =  this.findNeighbours(destination.getXPosition(), destination.getYPosition(), s -> !s.isEmpty());
-                        best = neighbours
-                                   .stream()
-                                   .map(s -> s.getASubspace())
-                                   .min((j1, j2) -> ((Individual)j1).compareTo((Individual)j2));
+                        int x = destination.getXPosition();
+                        int y = destination.getYPosition();
+                        best = this.fittestNeighbour(x, y, this.occupiedNeighbours(x, y));
                     } catch (Exception e) {
                         best = Optional.empty();
                     }
                     if (best.isPresent()) {
-                        this.replicateInto(destination, (Individual)best.get());
+                        this.replicateInto(destination, best.get());
                     }
                 }
             }
@@ -108,7 +150,7 @@ public class ToroidalTSP2DSpace extends Toroidal2DSpace implements SearchableSpa
                        .stream()
                        .filter(s -> !s.isEmpty())
                        .map(sp -> sp.getASubspace())
-                       .min((j1, j2) -> ((Individual)j1).compareTo((Individual)j2));
+                       .min(Individual::CompareFitness);
         } catch (Exception e) {
             // On occasions the space will not have a subspace by the time we get around to looking at it. Just press on regardless in that case:
             best = Optional.empty();
@@ -122,7 +164,7 @@ public class ToroidalTSP2DSpace extends Toroidal2DSpace implements SearchableSpa
                                           .parallelStream()
                                           .filter(s -> !s.isEmpty())
                                           .map((s) -> s.getASubspace())
-                                          .sorted((j1, j2) -> ((Individual)j2).compareTo((Individual)j1))
+                                          .sorted((j1, j2) -> Individual.CompareFitness(j2, j1))
                                           .collect(Collectors.toList());
 
         orderedJourneys.stream().limit(orderedJourneys.size()/2).forEach((j) -> j.getContainer().get().empty());
@@ -131,21 +173,14 @@ public class ToroidalTSP2DSpace extends Toroidal2DSpace implements SearchableSpa
     /** The supplied space is currently empty. Look at its neighbours and see if it's possible to find a decent
      *  journey to replicate into that space */
     private void findReplications(Journey2DSite s) {
-        // Find the journeys that are neighbours of the space s:
-        Set<Space> neighbours = this.findNeighbours(s.getXPosition(), s.getYPosition(), sp -> sp.numSubspaces() != 0);
-        if (neighbours.size() == 1) {
-            synchronized (_replicants) {
-                _replicants.put(s, (Journey)neighbours.stream().findAny().get().getASubspace());
-            }
-        } else if (neighbours.size() != 0) {
-            // Find the best journey of the possibilities and replicate that one, marking the others as less successful candidates:
-            Journey bestMatch = (Journey)neighbours
-                                                 .stream()
-                                                 .map(sp -> sp.getASubspace())
-                                                 .min((j1, j2) -> ((Individual)j1).compareTo((Individual)j2))
-                                                 .get();
+        // Find the best of the journeys that are neighbours of the space s and replicate that one, marking the others as less successful
+        // candidates:
+        int x = s.getXPosition();
+        int y = s.getYPosition();
+        Optional<Individual> bestMatch = this.fittestNeighbour(x, y, this.occupiedNeighbours(x, y));
+        if (bestMatch.isPresent()) {
             synchronized (_replicants) {
-                _replicants.put(s, bestMatch);
+                _replicants.put(s, (Journey)bestMatch.get());
             }
         }
     }
@@ -339,6 +339,24 @@ public class ComplexTSPTestsAround48Cities {
         assertTrue(world.numIndividuals() > 10, "Journey count");
     }
 
+    @Test (priority = 100)
+    public void synchronousStepsSpreadASingleJourneyAcrossToroidalSpace() throws Exception {
+        ToroidalTSP2DSpace world = new ToroidalTSP2DSpace(9, 9);
+        TestUtil.MakeJourneyInToroidalSpace(world, 4, 4, _NUM_CITIES, _cityDomain, _transcriberDomain, _translatorDomain, _reproducerDomain);
+
+        // Each step fills the empty sites around those occupied when it began, so the journeys spread one ring at a time and four steps fill
+        // the whole world:
+        world.synchronousStep();
+        assertEquals(world.numIndividuals(), 9L, "Journey count after one step");
+        world.synchronousStep();
+        assertEquals(world.numIndividuals(), 25L, "Journey count after two steps");
+        world.synchronousStep();
+        world.synchronousStep();
+        assertEquals(world.numIndividuals(), 81L, "Journey count");
+        assertEquals(world.numEmptyCells(), 0, "No empty cells");
+        assertTrue(world.best().isPresent(), "Best journey");
+    }
+
     @Test (priority = 100)
     public void multiThreadedSearchInToroidalSpaceWithSingleJourneyAsAStart() throws Exception {
         ToroidalTSP2DSpace world = new ToroidalTSP2DSpace(9, 9);